@@ -0,0 +1,602 @@
+package com.arthurdo.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the records of a WARC file, plain or gzip compressed, one after
+ * the other, and has one tokenizer tokenize the content of each. A record
+ * is a "WARC/" version line, header lines up to an empty line, and as
+ * many bytes of content as its Content-Length says. The content of a
+ * response record whose Content-Type is application/http starts with the
+ * HTTP headers, these are skipped and the HTML after them is tokenized.
+ * <p>
+ * The content is read into a buffer that is reused for the next record
+ * and the tokenizer is reset on it, so no String is made of it. It is
+ * tokenized as bytes when it is UTF-8, else it is decoded in the charset
+ * the HTTP headers or the page itself declare, see HtmlCharsetSniffer.
+ * <p>
+ * A gzip file may hold many members, each compressed on its own, as WARC
+ * files usually do with one member per record. index() finds where the
+ * members that start with a record are, and a reader made for a range of
+ * those offsets reads just the records in it, so a file can be split up
+ * among threads:
+ * <pre>
+ *	long[] index = HtmlArchiveReader.index(file);
+ *	// for each part, on its own thread
+ *	HtmlArchiveReader in = new HtmlArchiveReader(file, index[from], to &lt; index.length ? index[to] : Long.MAX_VALUE);
+ *	while (in.nextRecord())
+ *		... in.getTokenizer() ...
+ * </pre>
+ */
+public class HtmlArchiveReader implements Closeable
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final char[] NO_INPUT = new char[0];
+
+	private final InputStream m_in;
+	private final GzipMembers m_members;		// null for a plain file
+	private final long m_start;
+	private final long m_end;
+	private final HtmlStreamTokenizer m_tok = new HtmlStreamTokenizer(NO_INPUT);
+	private boolean m_tokenize = true;
+
+	private byte[] m_buf = new byte[BUFFER_SIZE];
+	private int m_bufPos = 0;
+	private int m_bufLimit = 0;
+	private long m_bufOffset = 0;		// offset of m_buf[0] in what m_in returns
+
+	private final List<String> m_headers = new ArrayList<String>();		// names and values
+	private byte[] m_content = new byte[BUFFER_SIZE];
+	private long m_recordOffset = -1;
+	private Charset m_charset = null;
+
+	/**
+	 * @param	file  a WARC file, gzip compressed or not
+	 */
+	public HtmlArchiveReader(Path file)
+		throws IOException
+	{
+		this(file, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads the records that start from <i>start</i> on and before
+	 * <i>end</i>. For a gzip file those are the records in the members
+	 * that start there.
+	 *
+	 * @param	start  offset of a record, see getRecordOffset() and index()
+	 * @param	end  offset in the file where to stop
+	 */
+	public HtmlArchiveReader(Path file, long start, long end)
+		throws IOException
+	{
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		boolean gzip = false;
+		try
+		{
+			if (channel.size() >= 2)
+			{
+				ByteBuffer magic = ByteBuffer.allocate(2);
+				channel.read(magic, 0);
+				gzip = (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b;
+			}
+			channel.position(start);
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+		InputStream in = Channels.newInputStream(channel);
+		m_start = start;
+		m_end = end;
+		m_members = gzip ? new GzipMembers(in, start, end) : null;
+		m_in = gzip ? m_members : in;
+	}
+
+	/**
+	 * @return	the tokenizer that tokenizes the content of each record. It
+	 *			keeps its settings from one record to the next.
+	 */
+	public HtmlStreamTokenizer getTokenizer()
+	{
+		return m_tok;
+	}
+
+	/**
+	 * Reads the next record and resets the tokenizer on its content. The
+	 * headers and the content of the last record are no longer valid.
+	 *
+	 * @return	false if there are no more records
+	 */
+	public boolean nextRecord()
+		throws IOException
+	{
+		String line;
+		long offset;
+		do
+		{
+			offset = m_bufOffset + m_bufPos;
+			line = readLine();
+			if (line == null)
+				return false;
+		}
+		while (line.length() == 0);		// the CRLFs after the last record
+		if (m_members != null)
+			m_recordOffset = m_members.memberAt(offset);
+		else
+		{
+			m_recordOffset = m_start + offset;
+			if (m_recordOffset >= m_end)
+				return false;
+		}
+		if (!line.startsWith("WARC/"))
+			throw new IOException("no record at " + describe(offset));
+
+		m_headers.clear();
+		while ((line = readLine()) != null && line.length() > 0)
+		{
+			if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && m_headers.size() > 0)
+			{
+				// a header value continued
+				int last = m_headers.size() - 1;
+				m_headers.set(last, m_headers.get(last) + " " + line.trim());
+				continue;
+			}
+			int colon = line.indexOf(':');
+			if (colon <= 0)
+				throw new IOException("bad header line in record at " + describe(offset) + ": " + line);
+			m_headers.add(line.substring(0, colon).trim());
+			m_headers.add(line.substring(colon + 1).trim());
+		}
+		String length = getHeader("Content-Length");
+		long contentLength;
+		try
+		{
+			contentLength = length == null ? -1 : Long.parseLong(length);
+		}
+		catch (NumberFormatException e)
+		{
+			contentLength = -1;
+		}
+		if (line == null || contentLength < 0 || contentLength > Integer.MAX_VALUE - 8)
+			throw new IOException("bad record at " + describe(offset));
+		readContent((int)contentLength);
+		if (m_tokenize)
+			resetTokenizer((int)contentLength);
+		return true;
+	}
+
+	/**
+	 * @return	the value of a header of the current record, null if it
+	 *			has none. Names are compared ignoring case.
+	 */
+	public String getHeader(String name)
+	{
+		for (int i = 0; i < m_headers.size(); i += 2)
+		{
+			if (m_headers.get(i).equalsIgnoreCase(name))
+				return m_headers.get(i + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @return	the WARC-Target-URI of the current record, null if it has none
+	 */
+	public String getTargetUri()
+	{
+		return getHeader("WARC-Target-URI");
+	}
+
+	/**
+	 * @return	where a reader can start to read from the current record on,
+	 *			see HtmlArchiveReader(Path, long, long), or -1 if it cannot
+	 *			because the record starts inside a gzip member
+	 */
+	public long getRecordOffset()
+	{
+		return m_recordOffset;
+	}
+
+	/**
+	 * @return	the charset the content of the current record is decoded in
+	 */
+	public Charset getCharset()
+	{
+		return m_charset;
+	}
+
+	public void close()
+		throws IOException
+	{
+		m_tok.reset(NO_INPUT);
+		m_in.close();
+	}
+
+	/**
+	 * Goes through a file and notes where its records can be read from,
+	 * see getRecordOffset(). For a gzip file these are the offsets of the
+	 * members that start with a record.
+	 *
+	 * @return	the offsets, in ascending order
+	 */
+	public static long[] index(Path file)
+		throws IOException
+	{
+		HtmlArchiveReader in = new HtmlArchiveReader(file);
+		in.m_tokenize = false;
+		long[] offsets = new long[64];
+		int count = 0;
+		try
+		{
+			while (in.nextRecord())
+			{
+				if (in.m_recordOffset < 0)
+					continue;
+				if (count == offsets.length)
+					offsets = Arrays.copyOf(offsets, count * 2);
+				offsets[count++] = in.m_recordOffset;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+
+	private void resetTokenizer(int length)
+	{
+		int start = 0;
+		Charset charset = null;
+		String type = getHeader("Content-Type");
+		if (type != null && type.toLowerCase().startsWith("application/http"))
+		{
+			start = httpHeadersEnd(length);
+			charset = HtmlCharsetSniffer.fromContentType(httpHeader(start, "Content-Type"));
+		}
+		if (charset == null)
+			charset = HtmlCharsetSniffer.sniff(m_content, start, length - start);
+		if (charset == null || charset.equals(StandardCharsets.UTF_8))
+		{
+			m_charset = StandardCharsets.UTF_8;
+			if (HtmlCharsetSniffer.bomLength(m_content, start, length - start) == 3)
+				start += 3;
+			m_tok.reset(m_content, start, length - start);
+		}
+		else
+		{
+			m_charset = charset;
+			int bom = HtmlCharsetSniffer.bomLength(m_content, start, length - start);
+			m_tok.reset(new InputStreamReader(new ByteArrayInputStream(m_content, start + bom, length - start - bom), charset));
+		}
+	}
+
+	/**
+	 * @return	index of the content after the HTTP headers at the start of
+	 *			m_content, 0 if there is no empty line that ends them
+	 */
+	private int httpHeadersEnd(int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (m_content[i] != '\n')
+				continue;
+			if (i + 1 < length && m_content[i + 1] == '\n')
+				return i + 2;
+			if (i + 2 < length && m_content[i + 1] == '\r' && m_content[i + 2] == '\n')
+				return i + 3;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return	the value of an HTTP header in m_content, null if it is not there
+	 */
+	private String httpHeader(int end, String name)
+	{
+		String headers = new String(m_content, 0, end, StandardCharsets.ISO_8859_1);
+		for (String line : headers.split("\r?\n"))
+		{
+			int colon = line.indexOf(':');
+			if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name))
+				return line.substring(colon + 1).trim();
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next line, a header line or the version line.
+	 *
+	 * @return	the line without its CRLF, or null at the end of the input
+	 */
+	private String readLine()
+		throws IOException
+	{
+		int from = m_bufPos;
+		while (true)
+		{
+			for (int i = from; i < m_bufLimit; i++)
+			{
+				if (m_buf[i] == '\n')
+				{
+					int end = i > m_bufPos && m_buf[i - 1] == '\r' ? i - 1 : i;
+					String line = new String(m_buf, m_bufPos, end - m_bufPos, StandardCharsets.UTF_8);
+					m_bufPos = i + 1;
+					return line;
+				}
+			}
+			from = m_bufLimit - m_bufPos;
+			if (!fill())
+			{
+				if (m_bufPos == m_bufLimit)
+					return null;
+				throw new EOFException("record cut off at " + describe(m_bufOffset + m_bufPos));
+			}
+			from += m_bufPos;
+		}
+	}
+
+	/**
+	 * Moves what is left in m_buf to the front and reads more after it.
+	 *
+	 * @return	false at the end of the input
+	 */
+	private boolean fill()
+		throws IOException
+	{
+		int left = m_bufLimit - m_bufPos;
+		if (m_bufPos == 0 && left == m_buf.length)
+			m_buf = Arrays.copyOf(m_buf, m_buf.length * 2);		// a very long line
+		System.arraycopy(m_buf, m_bufPos, m_buf, 0, left);
+		m_bufOffset += m_bufPos;
+		m_bufPos = 0;
+		m_bufLimit = left;
+		int n = m_in.read(m_buf, m_bufLimit, m_buf.length - m_bufLimit);
+		if (n <= 0)
+			return false;
+		m_bufLimit += n;
+		return true;
+	}
+
+	/**
+	 * Reads the content of a record into m_content.
+	 */
+	private void readContent(int length)
+		throws IOException
+	{
+		if (m_content.length < length)
+			m_content = new byte[Math.max(length, m_content.length * 2)];
+		int buffered = m_bufLimit - m_bufPos;
+		if (length <= buffered)
+		{
+			System.arraycopy(m_buf, m_bufPos, m_content, 0, length);
+			m_bufPos += length;
+			return;
+		}
+		System.arraycopy(m_buf, m_bufPos, m_content, 0, buffered);
+		int done = buffered;
+		while (done < length)
+		{
+			// the rest goes straight into m_content
+			int n = m_in.read(m_content, done, length - done);
+			if (n <= 0)
+				throw new EOFException("record content cut off at " + describe(m_bufOffset + m_bufLimit + done - buffered));
+			done += n;
+		}
+		m_bufOffset += m_bufLimit + length - buffered;
+		m_bufPos = m_bufLimit = 0;
+	}
+
+	private String describe(long offset)
+	{
+		return m_members != null ? "offset " + offset + " of the uncompressed data" : "offset " + (m_start + offset);
+	}
+
+	/**
+	 * The data of one gzip member after the other, and where in the file
+	 * each member starts.
+	 */
+	private static final class GzipMembers extends InputStream
+	{
+		private final InputStream m_file;
+		private final long m_end;
+		private long m_filePos;		// offset in the file after the bytes in m_in
+		private final byte[] m_in = new byte[BUFFER_SIZE];
+		private int m_inPos = 0;
+		private int m_inLimit = 0;
+		private final Inflater m_inflater = new Inflater(true);
+		private final CRC32 m_crc = new CRC32();
+		private boolean m_inMember = false;
+		private long m_memberSize;
+		private long m_out = 0;		// bytes inflated so far
+		private final ArrayDeque<long[]> m_starts = new ArrayDeque<long[]>();		// of the members: offset in the data, offset in the file
+
+		GzipMembers(InputStream file, long start, long end)
+		{
+			m_file = file;
+			m_filePos = start;
+			m_end = end;
+		}
+
+		/**
+		 * @return	offset in the file of the member whose data starts at
+		 *			<i>offset</i>, -1 if none does. Members that start before
+		 *			<i>offset</i> are forgotten.
+		 */
+		long memberAt(long offset)
+		{
+			while (!m_starts.isEmpty() && m_starts.peekFirst()[0] < offset)
+				m_starts.pollFirst();
+			long[] start = m_starts.peekFirst();
+			return start != null && start[0] == offset ? start[1] : -1;
+		}
+
+		public int read()
+			throws IOException
+		{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len)
+			throws IOException
+		{
+			if (len == 0)
+				return 0;
+			while (true)
+			{
+				if (!m_inMember && !startMember())
+					return -1;
+				int n;
+				try
+				{
+					n = m_inflater.inflate(b, off, len);
+				}
+				catch (DataFormatException e)
+				{
+					throw new ZipException(e.getMessage());
+				}
+				if (n > 0)
+				{
+					m_crc.update(b, off, n);
+					m_memberSize += n;
+					m_out += n;
+					return n;
+				}
+				if (m_inflater.finished())
+					endMember();
+				else if (m_inflater.needsDictionary())
+					throw new ZipException("gzip member needs a dictionary");
+				else if (m_inflater.needsInput())
+				{
+					if (m_inPos == m_inLimit && !fillInput())
+						throw new EOFException("gzip member cut off");
+					m_inflater.setInput(m_in, m_inPos, m_inLimit - m_inPos);
+					m_inPos = m_inLimit;
+				}
+			}
+		}
+
+		public void close()
+			throws IOException
+		{
+			m_inflater.end();
+			m_file.close();
+		}
+
+		/**
+		 * Reads the header of the next member.
+		 *
+		 * @return	false at the end of the file or of the range
+		 */
+		private boolean startMember()
+			throws IOException
+		{
+			long offset = m_filePos - (m_inLimit - m_inPos);
+			if (offset >= m_end)
+				return false;
+			int id1 = readByte();
+			if (id1 < 0)
+				return false;
+			if (id1 != 0x1f || headerByte() != 0x8b || headerByte() != 8)
+				throw new ZipException("no gzip member at offset " + offset);
+			int flags = headerByte();
+			for (int i = 0; i < 6; i++)
+				headerByte();		// time, extra flags and OS
+			if ((flags & 4) != 0)
+			{
+				int length = headerByte() | headerByte() << 8;
+				for (int i = 0; i < length; i++)
+					headerByte();
+			}
+			if ((flags & 8) != 0)
+				while (headerByte() != 0)
+					;		// file name
+			if ((flags & 16) != 0)
+				while (headerByte() != 0)
+					;		// comment
+			if ((flags & 2) != 0)
+			{
+				headerByte();
+				headerByte();
+			}
+			m_inflater.reset();
+			m_crc.reset();
+			m_memberSize = 0;
+			m_starts.addLast(new long[] { m_out, offset });
+			m_inMember = true;
+			return true;
+		}
+
+		/**
+		 * Reads and checks the trailer of the member that was inflated.
+		 */
+		private void endMember()
+			throws IOException
+		{
+			m_inPos = m_inLimit - m_inflater.getRemaining();
+			long crc = trailerInt();
+			long size = trailerInt();
+			if (crc != m_crc.getValue() || size != (m_memberSize & 0xffffffffL))
+				throw new ZipException("corrupt gzip member before offset " + (m_filePos - (m_inLimit - m_inPos)));
+			m_inMember = false;
+		}
+
+		private long trailerInt()
+			throws IOException
+		{
+			return (headerByte() | headerByte() << 8 | headerByte() << 16 | (long)headerByte() << 24) & 0xffffffffL;
+		}
+
+		private int headerByte()
+			throws IOException
+		{
+			int b = readByte();
+			if (b < 0)
+				throw new EOFException("gzip member cut off");
+			return b;
+		}
+
+		private int readByte()
+			throws IOException
+		{
+			if (m_inPos == m_inLimit && !fillInput())
+				return -1;
+			return m_in[m_inPos++] & 0xff;
+		}
+
+		private boolean fillInput()
+			throws IOException
+		{
+			int n = m_file.read(m_in, 0, m_in.length);
+			if (n <= 0)
+				return false;
+			m_inPos = 0;
+			m_inLimit = n;
+			m_filePos += n;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package com.arthurdo.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses many documents at once, each on its own thread. Where the JVM has
+ * virtual threads every document gets one, so documents waiting for I/O
+ * cost next to nothing; elsewhere a fixed pool of platform threads is
+ * used. At most getMaxConcurrency() documents are parsed at the same time,
+ * and the inputs are not all taken on at once: the caller is held back
+ * until a slot is free.
+ * <p>
+ * Each running document gets a workspace, a tokenizer and an HtmlTag to
+ * parse tags into, that is handed on to the next document when it is
+ * done. The tokenizer is reset for the next document, so its buffers are
+ * allocated once per workspace rather than once per document. Workspaces
+ * are pooled rather than kept per thread, since a virtual thread may move
+ * from one carrier thread to another.
+ */
+public class HtmlBulkParser
+{
+	/**
+	 * Parses one document.
+	 */
+	public interface DocumentParser<T>
+	{
+		/**
+		 * @param	tok  tokenizer positioned at the start of the document,
+		 *				with the default settings, reused by later documents
+		 * @param	tag  a tag to parse into, reused by later documents
+		 * @return	the result for the document
+		 */
+		T parse(HtmlStreamTokenizer tok, HtmlTag tag)
+			throws IOException, HtmlException;
+	}
+
+	/**
+	 * The outcome of parsing one input: a value or a failure.
+	 */
+	public static final class Result<T>
+	{
+		private final Object m_input;
+		private final T m_value;
+		private final Throwable m_failure;
+
+		Result(Object input, T value, Throwable failure)
+		{
+			m_input = input;
+			m_value = value;
+			m_failure = failure;
+		}
+
+		public Object getInput()
+		{
+			return m_input;
+		}
+
+		/**
+		 * @return	the value the DocumentParser returned, null if it failed
+		 */
+		public T getValue()
+		{
+			return m_value;
+		}
+
+		/**
+		 * @return	what the DocumentParser or reading the input threw, or null
+		 */
+		public Throwable getFailure()
+		{
+			return m_failure;
+		}
+
+		public boolean isSuccess()
+		{
+			return m_failure == null;
+		}
+	}
+
+	/**
+	 * What a running document parses with.
+	 */
+	private static final class Workspace
+	{
+		final HtmlStreamTokenizer m_tok = new HtmlStreamTokenizer(NO_INPUT);
+		final HtmlTag m_tag = new HtmlTag();
+	}
+
+	private static final char[] NO_INPUT = new char[0];
+
+	private final int m_maxConcurrency;
+	private final ConcurrentLinkedQueue<Workspace> m_workspaces = new ConcurrentLinkedQueue<Workspace>();
+
+	/**
+	 * @param	maxConcurrency  most documents to parse at the same time
+	 */
+	public HtmlBulkParser(int maxConcurrency)
+	{
+		if (maxConcurrency <= 0)
+			throw new IllegalArgumentException("concurrency must be positive: " + maxConcurrency);
+		m_maxConcurrency = maxConcurrency;
+	}
+
+	public int getMaxConcurrency()
+	{
+		return m_maxConcurrency;
+	}
+
+	/**
+	 * @return	true if documents are parsed on virtual threads
+	 */
+	public static boolean hasVirtualThreads()
+	{
+		return VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Parses every input and waits for all of them. An input may be a
+	 * Path to a file, bytes as a byte[], a Reader, which is closed when
+	 * done, a char[] or a CharSequence. Files and bytes are decoded in the
+	 * encoding their byte order mark or &lt;meta&gt; declares, UTF-8 if
+	 * they declare none, see HtmlCharsetSniffer.
+	 * <p>
+	 * What parsing a document throws is the failure of that document,
+	 * but for a VirtualMachineError other than a StackOverflowError: the
+	 * JVM may be broken then, so no more documents are started and the
+	 * error is thrown here once the running ones are done.
+	 *
+	 * @return	a result for every input, in the order of the inputs
+	 */
+	public <T> List<Result<T>> parseAll(List<?> inputs, final DocumentParser<T> parser)
+		throws InterruptedException
+	{
+		final Result<T>[] results = newResults(inputs.size());
+		final CountDownLatch done = new CountDownLatch(inputs.size());
+		final Semaphore slots = new Semaphore(m_maxConcurrency);
+		final AtomicReference<VirtualMachineError> fatal = new AtomicReference<VirtualMachineError>();
+		ExecutorService executor = newExecutor();
+		try
+		{
+			for (int i = 0; i < inputs.size(); i++)
+			{
+				final int index = i;
+				final Object input = inputs.get(i);
+				slots.acquire();
+				if (fatal.get() != null)
+				{
+					// the inputs left are not parsed
+					for (int j = i; j < inputs.size(); j++)
+						done.countDown();
+					break;
+				}
+				executor.execute(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							results[index] = parseOne(input, parser);
+						}
+						catch (VirtualMachineError e)
+						{
+							fatal.compareAndSet(null, e);
+						}
+						finally
+						{
+							slots.release();
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		if (fatal.get() != null)
+			throw fatal.get();
+		return Arrays.asList(results);		// the latch makes the results visible here
+	}
+
+	private <T> Result<T> parseOne(Object input, DocumentParser<T> parser)
+	{
+		Workspace ws = m_workspaces.poll();
+		if (ws == null)
+			ws = new Workspace();
+		try
+		{
+			return new Result<T>(input, parse(input, parser, ws), null);
+		}
+		catch (StackOverflowError e)
+		{
+			// deeply nested input is the failure of this document only
+			return new Result<T>(input, null, e);
+		}
+		catch (VirtualMachineError e)
+		{
+			throw e;		// the JVM may be broken, see parseAll()
+		}
+		catch (Throwable t)
+		{
+			return new Result<T>(input, null, t);
+		}
+		finally
+		{
+			ws.m_tok.reset(NO_INPUT);		// don't hold on to the input
+			ws.m_tok.resetSettings();
+			m_workspaces.offer(ws);
+		}
+	}
+
+	private static <T> T parse(Object input, DocumentParser<T> parser, Workspace ws)
+		throws IOException, HtmlException
+	{
+		HtmlStreamTokenizer tok = ws.m_tok;
+		if (input instanceof Reader)
+		{
+			Reader in = (Reader)input;
+			try
+			{
+				tok.reset(in);
+				return parser.parse(tok, ws.m_tag);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		if (input instanceof Path)
+			reset(tok, Files.readAllBytes((Path)input));		// small pages are cheaper read than mapped
+		else if (input instanceof byte[])
+			reset(tok, (byte[])input);
+		else if (input instanceof char[])
+			tok.reset((char[])input);
+		else if (input instanceof CharSequence)
+			tok.reset((CharSequence)input);
+		else
+			throw new IllegalArgumentException("cannot parse " + (input == null ? "null" : input.getClass().getName()));
+		return parser.parse(tok, ws.m_tag);
+	}
+
+	/**
+	 * Starts <i>tok</i> on <i>bytes</i>, which are tokenized as they are
+	 * if they are UTF-8, and decoded first otherwise.
+	 */
+	private static void reset(HtmlStreamTokenizer tok, byte[] bytes)
+	{
+		Charset charset = HtmlCharsetSniffer.sniff(bytes, 0, bytes.length);
+		int bom = HtmlCharsetSniffer.bomLength(bytes, 0, bytes.length);
+		if (charset == null || charset.equals(StandardCharsets.UTF_8))
+			tok.reset(bytes, bom, bytes.length - bom);
+		else
+			tok.reset(new InputStreamReader(new ByteArrayInputStream(bytes, bom, bytes.length - bom), charset));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Result<T>[] newResults(int size)
+	{
+		return (Result<T>[])new Result<?>[size];
+	}
+
+	private ExecutorService newExecutor()
+	{
+		if (VIRTUAL_EXECUTOR != null)
+		{
+			try
+			{
+				return (ExecutorService)VIRTUAL_EXECUTOR.invoke(null);
+			}
+			catch (Exception e)
+			{
+				// fall back to platform threads
+			}
+		}
+		return Executors.newFixedThreadPool(m_maxConcurrency);
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor(), looked up so that this
+	 * still runs on JVMs without virtual threads.
+	 */
+	private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+	private static Method findVirtualExecutor()
+	{
+		try
+		{
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.arthurdo.parser;
+
+/**
+ * A growable character buffer used for token text. Unlike StringBuffer it
+ * is not synchronized, so it must not be shared between threads.
+ */
+public final class HtmlCharBuffer implements CharSequence
+{
+    private char[] m_chars;
+    private int m_length = 0;
+
+    public HtmlCharBuffer()
+    {
+        this(16);
+    }
+
+    public HtmlCharBuffer(int capacity)
+    {
+        m_chars = new char[capacity];
+    }
+
+    public HtmlCharBuffer(CharSequence s)
+    {
+        this(s.length() + 16);
+        append(s);
+    }
+
+    public int length()
+    {
+        return m_length;
+    }
+
+    public char charAt(int index)
+    {
+        if (index >= m_length)
+            throw new IndexOutOfBoundsException("index " + index + ", length " + m_length);
+        return m_chars[index];
+    }
+
+    public void setCharAt(int index, char ch)
+    {
+        if (index >= m_length)
+            throw new IndexOutOfBoundsException("index " + index + ", length " + m_length);
+        m_chars[index] = ch;
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > m_length || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + m_length);
+        return new String(m_chars, start, end - start);
+    }
+
+    public void setLength(int length)
+    {
+        if (length > m_length)
+        {
+            ensureCapacity(length);
+            for (int i = m_length; i < length; i++)
+                m_chars[i] = '\0';
+        }
+        m_length = length;
+    }
+
+    public HtmlCharBuffer append(char ch)
+    {
+        if (m_length == m_chars.length)
+            ensureCapacity(m_length + 1);
+        m_chars[m_length++] = ch;
+        return this;
+    }
+
+    public HtmlCharBuffer append(char[] chars, int offset, int len)
+    {
+        ensureCapacity(m_length + len);
+        System.arraycopy(chars, offset, m_chars, m_length, len);
+        m_length += len;
+        return this;
+    }
+
+    public HtmlCharBuffer append(CharSequence s)
+    {
+        return append(s, 0, s.length());
+    }
+
+    public HtmlCharBuffer append(CharSequence s, int start, int end)
+    {
+        int len = end - start;
+        ensureCapacity(m_length + len);
+        if (s instanceof String)
+            ((String)s).getChars(start, end, m_chars, m_length);
+        else if (s instanceof HtmlCharBuffer)
+            System.arraycopy(((HtmlCharBuffer)s).m_chars, start, m_chars, m_length, len);
+        else
+            for (int i = 0; i < len; i++)
+                m_chars[m_length + i] = s.charAt(start + i);
+        m_length += len;
+        return this;
+    }
+
+    /**
+     * Copies characters into <i>dst</i>, like String.getChars().
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin)
+    {
+        if (srcBegin < 0 || srcEnd > m_length || srcBegin > srcEnd)
+            throw new IndexOutOfBoundsException("begin " + srcBegin + ", end " + srcEnd + ", length " + m_length);
+        System.arraycopy(m_chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+    }
+
+    /**
+     * @return	the backing array, valid from 0 to length(). It is replaced
+     *			when the buffer grows.
+     */
+    public char[] array()
+    {
+        return m_chars;
+    }
+
+    public int capacity()
+    {
+        return m_chars.length;
+    }
+
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > m_chars.length)
+        {
+            char[] chars = new char[Math.max(capacity, m_chars.length * 2 + 2)];
+            System.arraycopy(m_chars, 0, chars, 0, m_length);
+            m_chars = chars;
+        }
+    }
+
+    /**
+     * Gives back the memory of a buffer that grew for an unusually large
+     * value: if the capacity is over <i>highWater</i> the buffer is made
+     * <i>capacity</i> chars again, or length() if that is more.
+     */
+    public void shrink(int highWater, int capacity)
+    {
+        if (m_chars.length > highWater)
+        {
+            char[] chars = new char[Math.max(capacity, m_length)];
+            System.arraycopy(m_chars, 0, chars, 0, m_length);
+            m_chars = chars;
+        }
+    }
+
+    /**
+     * @return	true if the buffer holds exactly the characters of <i>s</i>.
+     */
+    public boolean contentEquals(CharSequence s)
+    {
+        if (s.length() != m_length)
+            return false;
+        for (int i = 0; i < m_length; i++)
+            if (m_chars[i] != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    public String toString()
+    {
+        return new String(m_chars, 0, m_length);
+    }
+}
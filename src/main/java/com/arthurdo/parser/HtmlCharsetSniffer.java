@@ -0,0 +1,426 @@
+package com.arthurdo.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Finds the encoding of an HTML document given as bytes, so the document
+ * is decoded right the first time rather than with the platform charset
+ * and parsed again once its &lt;meta&gt; has been seen. A byte order mark
+ * decides, if there is one. Otherwise the first PRESCAN_SIZE bytes are
+ * scanned for a &lt;meta charset&gt; or a &lt;meta http-equiv&gt; with a
+ * content type, the way browsers do it: bytes are looked at as ASCII,
+ * comments are skipped and so are the attributes of other tags, so a
+ * "&lt;meta" in an attribute value or comment does not count.
+ */
+public final class HtmlCharsetSniffer
+{
+	/**
+	 * bytes scanned for a &lt;meta&gt; that declares the encoding
+	 */
+	public static final int PRESCAN_SIZE = 1024;
+
+	private final byte[] m_bytes;
+	private final int m_end;
+	private int m_pos;
+	private String m_name;		// of the last attribute, lower case
+	private String m_value;
+
+	private HtmlCharsetSniffer(byte[] bytes, int off, int len)
+	{
+		m_bytes = bytes;
+		m_pos = off;
+		m_end = off + len;
+	}
+
+	/**
+	 * Returns a reader that decodes <i>in</i> in the encoding its byte
+	 * order mark or &lt;meta&gt; declares, or else in UTF-8, see
+	 * newReader(InputStream, Charset).
+	 */
+	public static Reader newReader(InputStream in)
+	{
+		return newReader(in, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a reader that decodes <i>in</i> in the encoding its byte
+	 * order mark or &lt;meta&gt; declares. Nothing is read until the
+	 * reader is first read from, then the first PRESCAN_SIZE bytes are
+	 * read to decide on the encoding. The byte order mark is not passed
+	 * on. An encoding that is known for sure, e.g. from the Content-Type
+	 * header of the response, should be given to an InputStreamReader
+	 * instead, it has the last word.
+	 *
+	 * @param	fallback  encoding when the document does not declare one
+	 */
+	public static Reader newReader(InputStream in, Charset fallback)
+	{
+		return new SniffingReader(in, fallback);
+	}
+
+	/**
+	 * @return	the encoding the byte order mark or a &lt;meta&gt; at the
+	 *			start of the bytes declares, or null if there is none or
+	 *			it is not supported. Only the first PRESCAN_SIZE bytes are
+	 *			looked at.
+	 */
+	public static Charset sniff(byte[] bytes, int off, int len)
+	{
+		Charset charset = bomCharset(bytes, off, len);
+		if (charset != null)
+			return charset;
+		return new HtmlCharsetSniffer(bytes, off, Math.min(len, PRESCAN_SIZE)).prescan();
+	}
+
+	/**
+	 * @return	the charset parameter of a Content-Type header value like
+	 *			"text/html; charset=ISO-8859-1", or null if there is none
+	 *			or it is not supported
+	 */
+	public static Charset fromContentType(String contentType)
+	{
+		if (contentType == null)
+			return null;
+		return lookup(charsetParameter(contentType));
+	}
+
+	/**
+	 * @return	the encoding the byte order mark at the start of the bytes
+	 *			stands for, null if there is none
+	 */
+	private static Charset bomCharset(byte[] bytes, int off, int len)
+	{
+		int length = bomLength(bytes, off, len);
+		if (length == 3)
+			return StandardCharsets.UTF_8;
+		if (length == 2)
+			return bytes[off] == (byte)0xfe ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+		return null;
+	}
+
+	/**
+	 * @return	length of the byte order mark at the start of the bytes, 0
+	 *			if there is none
+	 */
+	static int bomLength(byte[] b, int off, int len)
+	{
+		if (len >= 3 && b[off] == (byte)0xef && b[off + 1] == (byte)0xbb && b[off + 2] == (byte)0xbf)
+			return 3;
+		if (len >= 2 && ((b[off] == (byte)0xfe && b[off + 1] == (byte)0xff) || (b[off] == (byte)0xff && b[off + 1] == (byte)0xfe)))
+			return 2;
+		return 0;
+	}
+
+	private Charset prescan()
+	{
+		while (m_pos < m_end)
+		{
+			if (startsWith("<!--"))
+			{
+				int end = indexOf("-->", m_pos + 2);		// "<!-->" ends the comment as well
+				if (end < 0)
+					return null;
+				m_pos = end + 3;
+			}
+			else if (startsWith("<meta") && m_pos + 5 < m_end && (isSpace(m_bytes[m_pos + 5]) || m_bytes[m_pos + 5] == '/'))
+			{
+				m_pos += 6;
+				Charset charset = meta();
+				if (charset != null)
+					return charset;
+			}
+			else if (m_bytes[m_pos] == '<' && m_pos + 1 < m_end
+				&& (isLetter(m_bytes[m_pos + 1]) || (m_bytes[m_pos + 1] == '/' && m_pos + 2 < m_end && isLetter(m_bytes[m_pos + 2]))))
+			{
+				// some other tag, whose attribute values may hold anything
+				while (m_pos < m_end && !isSpace(m_bytes[m_pos]) && m_bytes[m_pos] != '>')
+					m_pos++;
+				while (attribute())
+					;
+				m_pos++;
+			}
+			else if (startsWith("<!") || startsWith("</") || startsWith("<?"))
+			{
+				int end = indexOf(">", m_pos + 2);
+				if (end < 0)
+					return null;
+				m_pos = end + 1;
+			}
+			else
+				m_pos++;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the attributes of a &lt;meta&gt;.
+	 *
+	 * @return	the encoding it declares, null if it declares none
+	 */
+	private Charset meta()
+	{
+		boolean contentType = false;		// http-equiv="content-type"
+		String charset = null;
+		boolean fromContent = false;
+		boolean seenCharset = false;
+		boolean seenContent = false;
+		while (attribute())
+		{
+			if (m_name.equals("http-equiv"))
+				contentType |= m_value.equals("content-type");
+			else if (m_name.equals("content") && !seenContent)
+			{
+				seenContent = true;
+				if (charset == null)
+				{
+					charset = charsetParameter(m_value);
+					fromContent = charset != null;
+				}
+			}
+			else if (m_name.equals("charset") && !seenCharset)
+			{
+				seenCharset = true;
+				charset = m_value;
+				fromContent = false;
+			}
+		}
+		if (charset == null || (fromContent && !contentType))
+			return null;
+		Charset found = lookup(charset);
+		if (found != null && found.name().startsWith("UTF-16"))
+			return StandardCharsets.UTF_8;		// the bytes got this far as ASCII, so they are not UTF-16
+		return found;
+	}
+
+	/**
+	 * Reads the next attribute of a tag into m_name and m_value.
+	 *
+	 * @return	false at the '&gt;' that ends the tag or at the end of the
+	 *			bytes
+	 */
+	private boolean attribute()
+	{
+		while (m_pos < m_end && (isSpace(m_bytes[m_pos]) || m_bytes[m_pos] == '/'))
+			m_pos++;
+		if (m_pos >= m_end || m_bytes[m_pos] == '>')
+			return false;
+
+		StringBuilder name = new StringBuilder();
+		boolean hasValue = false;
+		while (m_pos < m_end)
+		{
+			byte c = m_bytes[m_pos];
+			if (c == '=' && name.length() > 0)
+			{
+				m_pos++;
+				hasValue = true;
+				break;
+			}
+			if (isSpace(c))
+			{
+				while (m_pos < m_end && isSpace(m_bytes[m_pos]))
+					m_pos++;
+				if (m_pos < m_end && m_bytes[m_pos] == '=')
+				{
+					m_pos++;
+					hasValue = true;
+				}
+				break;
+			}
+			if (c == '/' || c == '>')
+				break;
+			name.append(lower(c));
+			m_pos++;
+		}
+		if (m_pos >= m_end)
+			return false;
+		m_name = name.toString();
+		m_value = "";
+		if (!hasValue)
+			return true;
+
+		while (m_pos < m_end && isSpace(m_bytes[m_pos]))
+			m_pos++;
+		if (m_pos >= m_end)
+			return false;
+		StringBuilder value = new StringBuilder();
+		byte quote = m_bytes[m_pos];
+		if (quote == '"' || quote == '\'')
+		{
+			int end = indexOf(quote == '"' ? "\"" : "'", m_pos + 1);
+			if (end < 0)
+				return false;
+			for (int i = m_pos + 1; i < end; i++)
+				value.append(lower(m_bytes[i]));
+			m_pos = end + 1;
+		}
+		else
+		{
+			while (m_pos < m_end && !isSpace(m_bytes[m_pos]) && m_bytes[m_pos] != '>')
+				value.append(lower(m_bytes[m_pos++]));
+			if (m_pos >= m_end)
+				return false;
+		}
+		m_value = value.toString();
+		return true;
+	}
+
+	/**
+	 * @return	the value after "charset=" in a content type, null if there
+	 *			is none
+	 */
+	private static String charsetParameter(String s)
+	{
+		String lower = s.toLowerCase();
+		int i = 0;
+		while ((i = lower.indexOf("charset", i)) >= 0)
+		{
+			i += 7;
+			while (i < s.length() && HtmlUtils.isSpace(s.charAt(i)))
+				i++;
+			if (i >= s.length() || s.charAt(i) != '=')
+				continue;		// look for the next "charset"
+			i++;
+			while (i < s.length() && HtmlUtils.isSpace(s.charAt(i)))
+				i++;
+			if (i >= s.length())
+				return null;
+			char quote = s.charAt(i);
+			if (quote == '"' || quote == '\'')
+			{
+				int end = s.indexOf(quote, i + 1);
+				return end < 0 ? null : s.substring(i + 1, end);
+			}
+			int end = i;
+			while (end < s.length() && !HtmlUtils.isSpace(s.charAt(end)) && s.charAt(end) != ';')
+				end++;
+			return s.substring(i, end);
+		}
+		return null;
+	}
+
+	/**
+	 * @return	the charset called <i>name</i>, null if there is none
+	 */
+	private static Charset lookup(String name)
+	{
+		if (name == null)
+			return null;
+		name = name.trim();
+		if (name.length() == 0)
+			return null;
+		try
+		{
+			return Charset.forName(name);
+		}
+		catch (IllegalCharsetNameException e)
+		{
+			return null;
+		}
+		catch (UnsupportedCharsetException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return	true if the bytes at m_pos are <i>s</i>, ignoring case
+	 */
+	private boolean startsWith(String s)
+	{
+		if (m_pos + s.length() > m_end)
+			return false;
+		for (int i = 0; i < s.length(); i++)
+		{
+			if (lower(m_bytes[m_pos + i]) != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private int indexOf(String s, int from)
+	{
+		for (int i = from; i + s.length() <= m_end; i++)
+		{
+			int k = 0;
+			while (k < s.length() && m_bytes[i + k] == s.charAt(k))
+				k++;
+			if (k == s.length())
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean isSpace(byte c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+
+	private static boolean isLetter(byte c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static char lower(byte c)
+	{
+		return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : (char)(c & 0xff);
+	}
+
+	/**
+	 * Decides on the encoding when it is first read from.
+	 */
+	private static final class SniffingReader extends Reader
+	{
+		private final InputStream m_in;
+		private final Charset m_fallback;
+		private Reader m_reader = null;
+
+		SniffingReader(InputStream in, Charset fallback)
+		{
+			m_in = in;
+			m_fallback = fallback;
+		}
+
+		public int read(char[] cbuf, int off, int len)
+			throws IOException
+		{
+			if (m_reader == null)
+				m_reader = open();
+			return m_reader.read(cbuf, off, len);
+		}
+
+		public void close()
+			throws IOException
+		{
+			if (m_reader != null)
+				m_reader.close();
+			else
+				m_in.close();
+		}
+
+		private Reader open()
+			throws IOException
+		{
+			byte[] head = new byte[PRESCAN_SIZE];
+			int n = 0;
+			int count;
+			while (n < head.length && (count = m_in.read(head, n, head.length - n)) > 0)
+				n += count;
+			Charset charset = sniff(head, 0, n);
+			if (charset == null)
+				charset = m_fallback;
+			int bom = bomLength(head, 0, n);
+			InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head, bom, n - bom), m_in);
+			return new InputStreamReader(rest, charset);
+		}
+	}
+}
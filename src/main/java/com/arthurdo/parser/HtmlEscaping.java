@@ -112,7 +112,7 @@ public class HtmlEscaping {
         if (buf.indexOf('&') == -1)
             return buf;
 
-        StringBuffer b = new StringBuffer(buf);
+        HtmlCharBuffer b = new HtmlCharBuffer(buf);
         unescape(b);
         return b.toString();
     }
@@ -123,8 +123,28 @@ public class HtmlEscaping {
      * <b>&amp;copy;</b> becomes <b>&copy;</b>.
      *
      * @param	buf  will remove all HTML escape sequences from this buffer
+     * @deprecated	use unescape(HtmlCharBuffer) instead.
      */
+    @Deprecated
     public static void unescape(StringBuffer buf)
+    {
+        // quick check to see if there are any escape characters
+        if (buf.indexOf("&") == -1)
+            return;
+
+        HtmlCharBuffer b = new HtmlCharBuffer(buf);
+        unescape(b);
+        buf.setLength(0);
+        buf.append(b.array(), 0, b.length());
+    }
+
+    /**
+     * Replaces HTML escape sequences with its character equivalent, e.g.
+     * <b>&amp;copy;</b> becomes <b>&copy;</b>.
+     *
+     * @param	buf  will remove all HTML escape sequences from this buffer
+     */
+    public static void unescape(HtmlCharBuffer buf)
     {
         int len = buf.length();
         int i = 0;
@@ -0,0 +1,285 @@
+package com.arthurdo.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Tokenizes one large in-memory document on several threads. The input is
+ * split in front of a '&lt;' into chunks, and every chunk is tokenized as if
+ * the document started there. That guess is wrong when a chunk starts inside
+ * a comment, a quoted attribute value or a CDATA section, so the chunks are
+ * then merged in order: a sequential tokenizer picks up where the previous
+ * chunk ended and runs until it reaches the same state at the same offset as
+ * the speculative one, from where on the chunk's tokens are taken over with
+ * their line numbers shifted.
+ * <p>
+ * The result is the same as calling HtmlStreamTokenizer.nextToken() until
+ * TT_EOF. Since only the consumer of the tokens can call enterCDATAMode(),
+ * a CDATA section is never entered here, except for the raw text elements
+ * of setRawTextElements().
+ */
+public class HtmlParallelTokenizer
+{
+	private final char[] m_chars;
+	private final int m_offset;
+	private final int m_length;
+	private boolean m_unescape = false;
+	private boolean m_rawTextElements = false;
+	private int m_chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * @param	buf  characters to tokenize, see HtmlStreamTokenizer(char[], int, int)
+	 * @param	offset  index of the first character
+	 * @param	length  number of characters
+	 */
+	public HtmlParallelTokenizer(char[] buf, int offset, int length)
+	{
+		m_chars = buf;
+		m_offset = offset;
+		m_length = length;
+	}
+
+	public HtmlParallelTokenizer(char[] buf)
+	{
+		this(buf, 0, buf.length);
+	}
+
+	/**
+	 * The text is copied into a char[] once, so token offsets are still
+	 * indexes into <i>text</i>.
+	 */
+	public HtmlParallelTokenizer(CharSequence text)
+	{
+		this(text.toString().toCharArray());
+	}
+
+	public boolean isUnescaped()
+	{
+		return m_unescape;
+	}
+
+	public void setUnescaped(boolean unescape)
+	{
+		m_unescape = unescape;
+	}
+
+	public boolean isRawTextElements()
+	{
+		return m_rawTextElements;
+	}
+
+	/**
+	 * @see		HtmlStreamTokenizer#setRawTextElements(boolean)
+	 */
+	public void setRawTextElements(boolean on)
+	{
+		m_rawTextElements = on;
+	}
+
+	public int getChunkSize()
+	{
+		return m_chunkSize;
+	}
+
+	/**
+	 * @param	chunkSize  approximate number of characters each task tokenizes
+	 */
+	public void setChunkSize(int chunkSize)
+	{
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+		m_chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return	all the tokens of the input in order, TT_EOF excluded.
+	 */
+	public List<HtmlToken> tokenize()
+		throws IOException
+	{
+		return tokenize(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param	pool  the pool to tokenize the chunks on
+	 * @return	all the tokens of the input in order, TT_EOF excluded.
+	 */
+	public List<HtmlToken> tokenize(ForkJoinPool pool)
+		throws IOException
+	{
+		long[] bounds = splitPoints();
+		int count = bounds.length - 1;
+		List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>(count);
+		for (int i = 0; i < count; i++)
+			tasks.add(pool.submit(new ChunkTask(bounds[i], bounds[i + 1], i == count - 1)));
+
+		List<HtmlToken> tokens = new ArrayList<HtmlToken>();
+		HtmlStreamTokenizer tok = newTokenizer();
+		HtmlTokenizerCheckpoint cp = tok.checkpoint();
+		for (int i = 0; i < count; i++)
+		{
+			Chunk chunk = tasks.get(i).join();
+			if (chunk.m_error != null)
+				throw chunk.m_error;
+			long end = i == count - 1 ? Long.MAX_VALUE : bounds[i + 1];
+			tok.restore(cp);
+			cp = merge(tok, cp, chunk, end, tokens);
+			if (cp == null)
+				break;
+		}
+		return tokens;
+	}
+
+	/**
+	 * Runs <i>tok</i> from <i>cp</i> until it is past <i>end</i> or has caught
+	 * up with the speculative tokens of <i>chunk</i>.
+	 *
+	 * @return	the checkpoint after the last token, or null at end of input.
+	 */
+	private static HtmlTokenizerCheckpoint merge(HtmlStreamTokenizer tok, HtmlTokenizerCheckpoint cp,
+												 Chunk chunk, long end, List<HtmlToken> tokens)
+		throws IOException
+	{
+		int next = 0;	// first chunk token whose state before it is not behind cp
+		while (cp.m_offset < end)
+		{
+			while (next < chunk.size() && chunk.before(next).m_offset < cp.m_offset)
+				next++;
+			for (int j = next; j < chunk.size() && chunk.before(j).m_offset == cp.m_offset; j++)
+			{
+				if (chunk.before(j).sameState(cp))
+				{
+					int delta = cp.m_lineno - chunk.before(j).m_lineno;
+					// the chunk took its start for the start of a line, columns on
+					// that line are counted from where the line really starts
+					long guessedLineStart = chunk.before(j).m_lineStart;
+					for (int k = j; k < chunk.size(); k++)
+					{
+						HtmlToken t = chunk.m_tokens.get(k);
+						int column = t.getColumnNumber();
+						if (t.getStart() - column + 1 == guessedLineStart)
+							column = (int)(t.getStart() - cp.m_lineStart) + 1;
+						tokens.add(delta == 0 && column == t.getColumnNumber() ? t : t.withPosition(t.getLineNumber() + delta, column));
+					}
+					if (chunk.m_eof)
+						return null;
+					HtmlTokenizerCheckpoint last = chunk.m_after.get(chunk.size() - 1);
+					return new HtmlTokenizerCheckpoint(last.m_state, last.m_pushback, last.m_lineno + delta,
+						last.m_comment, last.m_tagquote, last.m_cdata_end, last.m_cdata, last.m_cdata_held,
+						last.m_cdata_flush, last.m_cdata_pushback,
+						last.m_rawText, last.m_continued, last.m_offset, last.m_line + cp.m_line - chunk.before(j).m_line,
+						last.m_lineStart == guessedLineStart ? cp.m_lineStart : last.m_lineStart);
+				}
+			}
+			if (tok.nextToken() == HtmlStreamTokenizer.TT_EOF)
+				return null;
+			tokens.add(tok.getToken());
+			cp = tok.checkpoint();
+		}
+		return cp;
+	}
+
+	/**
+	 * @return	offsets where chunks start, each in front of a '&lt;',
+	 *			followed by the end of the input.
+	 */
+	private long[] splitPoints()
+	{
+		int end = m_offset + m_length;
+		List<Integer> points = new ArrayList<Integer>();
+		points.add(m_offset);
+		int pos = m_offset + m_chunkSize;
+		while (pos < end)
+		{
+			while (pos < end && m_chars[pos] != '<')
+				pos++;
+			if (pos < end)
+				points.add(pos);
+			pos += m_chunkSize;
+		}
+		long[] bounds = new long[points.size() + 1];
+		for (int i = 0; i < points.size(); i++)
+			bounds[i] = points.get(i);
+		bounds[points.size()] = end;
+		return bounds;
+	}
+
+	private HtmlStreamTokenizer newTokenizer()
+	{
+		HtmlStreamTokenizer tok = new HtmlStreamTokenizer(m_chars, m_offset, m_length);
+		tok.setUnescaped(m_unescape);
+		tok.setRawTextElements(m_rawTextElements);
+		return tok;
+	}
+
+	/**
+	 * Tokens read by guessing the state at the start of a chunk, with the
+	 * state in front of each of them.
+	 */
+	private static final class Chunk
+	{
+		final List<HtmlToken> m_tokens = new ArrayList<HtmlToken>();
+		final List<HtmlTokenizerCheckpoint> m_after = new ArrayList<HtmlTokenizerCheckpoint>();
+		HtmlTokenizerCheckpoint m_start;
+		boolean m_eof = false;
+		IOException m_error = null;
+
+		int size()
+		{
+			return m_tokens.size();
+		}
+
+		HtmlTokenizerCheckpoint before(int i)
+		{
+			return i == 0 ? m_start : m_after.get(i - 1);
+		}
+	}
+
+	private final class ChunkTask implements Callable<Chunk>
+	{
+		private final long m_start;
+		private final long m_end;
+		private final boolean m_last;
+
+		ChunkTask(long start, long end, boolean last)
+		{
+			m_start = start;
+			m_end = end;
+			m_last = last;
+		}
+
+		public Chunk call()
+		{
+			Chunk chunk = new Chunk();
+			chunk.m_start = HtmlStreamTokenizer.initialCheckpoint(m_start);
+			HtmlStreamTokenizer tok = newTokenizer();
+			tok.restore(chunk.m_start);
+			HtmlTokenizerCheckpoint cp = chunk.m_start;
+			try
+			{
+				while (m_last || cp.m_offset < m_end)
+				{
+					if (tok.nextToken() == HtmlStreamTokenizer.TT_EOF)
+					{
+						chunk.m_eof = true;
+						break;
+					}
+					chunk.m_tokens.add(tok.getToken());
+					cp = tok.checkpoint();
+					chunk.m_after.add(cp);
+				}
+			}
+			catch (IOException e)
+			{
+				chunk.m_error = e;
+			}
+			return chunk;
+		}
+	}
+}
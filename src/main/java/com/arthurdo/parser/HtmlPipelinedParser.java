@@ -0,0 +1,456 @@
+package com.arthurdo.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parses a document in three stages that run at the same time, each on a
+ * thread of its own: the first reads and decodes the input into chunks
+ * of chars, the second tokenizes the chunks into TokenBatches, and the
+ * third, the thread that called parse(), parses the tags and hands the
+ * tokens to the TokenConsumer. On a machine with cores to spare, a large
+ * document is then done in about the time its slowest stage takes rather
+ * than in the time all of them take together.
+ * <p>
+ * The chunks and the batches are allocated once, in rings that go round
+ * between two stages: a full one is passed on through a lock-free queue
+ * with one producer and one consumer, see SpscQueue, and comes back empty
+ * through another. A stage with nothing to do spins for a while before it
+ * parks.
+ * <p>
+ * The tokenizer runs ahead of the consumer, so the consumer cannot
+ * enterCDATAMode(); the tokenizer recognizes raw text elements itself,
+ * see HtmlStreamTokenizer.setRawTextElements(). A parser parses one
+ * document at a time.
+ */
+public class HtmlPipelinedParser
+{
+	/**
+	 * Receives the tokens of a document, in order.
+	 */
+	public interface TokenConsumer
+	{
+		/**
+		 * @param	batch  the batch holding the token, only valid during
+		 *				the call
+		 * @param	i  index of the token in the batch
+		 * @param	tag  the tag of a TT_TAG token, reused for the next tag,
+		 *				null for other tokens and tags that do not parse
+		 */
+		void token(TokenBatch batch, int i, HtmlTag tag)
+			throws IOException;
+	}
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final int CHUNKS = 8;
+	private static final int BATCH_SIZE = 256;
+	private static final int BATCHES = 8;
+
+	/**
+	 * waits up to this many rounds spinning, and as many again yielding,
+	 * before parking
+	 */
+	private static final int SPINS = 256;
+	private static final long PARK_NANOS = 50 * 1000;
+
+	private final Executor m_executor;
+	private final char[][] m_chunks;
+	private final TokenBatch[] m_batches;
+	private final HtmlStreamTokenizer m_tok = new HtmlStreamTokenizer(new char[0]);
+	private final HtmlTagParser m_tagParser = new HtmlTagParser();
+	private final HtmlTag m_tag = new HtmlTag();
+
+	// the document being parsed
+	private volatile boolean m_stopped;
+	private volatile Throwable m_failure;
+
+	/**
+	 * Runs the first two stages on threads of their own, started for each
+	 * document.
+	 */
+	public HtmlPipelinedParser()
+	{
+		this(new ThreadPerStage());
+	}
+
+	/**
+	 * @param	executor  runs the first two stages, it must have two threads
+	 *				free for every document being parsed
+	 */
+	public HtmlPipelinedParser(Executor executor)
+	{
+		this(executor, CHUNK_SIZE, CHUNKS, BATCH_SIZE, BATCHES);
+	}
+
+	HtmlPipelinedParser(Executor executor, int chunkSize, int chunks, int batchSize, int batches)
+	{
+		m_executor = executor;
+		m_chunks = new char[chunks][chunkSize];
+		m_batches = new TokenBatch[batches];
+		for (int i = 0; i < batches; i++)
+			m_batches[i] = new TokenBatch(batchSize);
+		m_tok.setRawTextElements(true);
+	}
+
+	/**
+	 * @return	the tokenizer of the second stage, to change its settings.
+	 *			It is reset for every document and keeps its settings.
+	 */
+	public HtmlStreamTokenizer getTokenizer()
+	{
+		return m_tok;
+	}
+
+	/**
+	 * Parses a document given as bytes, decoded in the encoding its byte
+	 * order mark or &lt;meta&gt; declares, see HtmlCharsetSniffer. The
+	 * input is not closed.
+	 */
+	public void parse(InputStream in, TokenConsumer consumer)
+		throws IOException
+	{
+		parse(HtmlCharsetSniffer.newReader(in), consumer);
+	}
+
+	/**
+	 * Parses a document and returns when the consumer has had all of its
+	 * tokens. What the input, the tokenizer, the consumer or the executor
+	 * throws is thrown here, and stops the other stages. The input is not closed.
+	 */
+	public void parse(final Reader in, TokenConsumer consumer)
+		throws IOException
+	{
+		// the rings start out empty, with every chunk and batch free
+		final SpscQueue<Chunk> fullChunks = new SpscQueue<Chunk>(m_chunks.length);
+		final SpscQueue<Chunk> freeChunks = new SpscQueue<Chunk>(m_chunks.length);
+		for (char[] chars : m_chunks)
+			freeChunks.offer(new Chunk(chars));
+		final SpscQueue<TokenBatch> fullBatches = new SpscQueue<TokenBatch>(m_batches.length);
+		final SpscQueue<TokenBatch> freeBatches = new SpscQueue<TokenBatch>(m_batches.length);
+		for (TokenBatch batch : m_batches)
+			freeBatches.offer(batch);
+
+		m_stopped = false;
+		m_failure = null;
+		final CountDownLatch stages = new CountDownLatch(2);
+		int started = 0;
+		try
+		{
+			m_executor.execute(new Stage(stages)
+			{
+				void work()
+					throws Exception
+				{
+					decode(in, freeChunks, fullChunks);
+				}
+			});
+			started++;
+			m_tok.reset(new ChunkReader(fullChunks, freeChunks));
+			m_executor.execute(new Stage(stages)
+			{
+				void work()
+					throws Exception
+				{
+					tokenize(freeBatches, fullBatches);
+				}
+			});
+			started++;
+
+			consume(consumer, fullBatches, freeBatches);
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+		catch (RuntimeException e)
+		{
+			fail(e);
+		}
+		catch (Error e)
+		{
+			fail(e);
+		}
+		finally
+		{
+			m_stopped = true;
+			for (; started < 2; started++)
+				stages.countDown();		// a stage the executor would not take
+			awaitStages(stages);
+			m_tok.reset(new char[0]);		// don't hold on to the input
+		}
+		rethrow();
+	}
+
+	/**
+	 * The first stage: reads the input into free chunks.
+	 */
+	private void decode(Reader in, SpscQueue<Chunk> free, SpscQueue<Chunk> full)
+		throws IOException
+	{
+		while (true)
+		{
+			Chunk chunk = take(free);
+			if (chunk == null)
+				return;
+			int n;
+			do
+			{
+				n = in.read(chunk.m_chars, 0, chunk.m_chars.length);		// what there is, rather than wait for a full chunk
+			}
+			while (n == 0);
+			chunk.m_length = Math.max(n, 0);
+			chunk.m_pos = 0;
+			put(full, chunk);
+			if (n < 0)
+				return;		// the empty chunk ends the input
+		}
+	}
+
+	/**
+	 * The second stage: tokenizes the chunks into free batches.
+	 */
+	private void tokenize(SpscQueue<TokenBatch> free, SpscQueue<TokenBatch> full)
+		throws IOException
+	{
+		while (true)
+		{
+			TokenBatch batch = take(free);
+			if (batch == null)
+				return;
+			int n = m_tok.nextTokens(batch);
+			put(full, batch);
+			if (n == 0)
+				return;		// the empty batch ends the tokens
+		}
+	}
+
+	/**
+	 * The third stage: parses the tags and hands the tokens on.
+	 */
+	private void consume(TokenConsumer consumer, SpscQueue<TokenBatch> full, SpscQueue<TokenBatch> free)
+		throws IOException
+	{
+		boolean unescape = m_tok.isUnescaped();
+		while (true)
+		{
+			TokenBatch batch = take(full);
+			if (batch == null || batch.size() == 0)
+				return;
+			CharBuffer value = CharBuffer.wrap(batch.chars());
+			for (int i = 0; i < batch.size(); i++)
+			{
+				HtmlTag tag = null;
+				if (batch.getTokenType(i) == HtmlStreamTokenizer.TT_TAG)
+				{
+					value.limit(value.capacity());
+					value.position(batch.getStart(i));
+					value.limit(batch.getStart(i) + batch.getLength(i));
+					try
+					{
+						m_tagParser.parseTag(value, m_tag, unescape);
+						tag = m_tag;
+					}
+					catch (HtmlException e)
+					{
+						// not a tag after all, the consumer gets the token as it is
+					}
+				}
+				consumer.token(batch, i, tag);
+			}
+			put(free, batch);
+		}
+	}
+
+	/**
+	 * @return	the next item of <i>queue</i>, waiting for it if need be,
+	 *			or null if the document has been stopped meanwhile
+	 */
+	private <T> T take(SpscQueue<T> queue)
+	{
+		T item;
+		int round = 0;
+		while ((item = queue.poll()) == null)
+		{
+			if (m_stopped)
+				return null;
+			idle(round++);
+		}
+		return item;
+	}
+
+	/**
+	 * Puts <i>item</i> to <i>queue</i>, waiting for room if need be,
+	 * unless the document has been stopped meanwhile.
+	 */
+	private <T> void put(SpscQueue<T> queue, T item)
+	{
+		int round = 0;
+		while (!queue.offer(item))
+		{
+			if (m_stopped)
+				return;
+			idle(round++);
+		}
+	}
+
+	private static void idle(int round)
+	{
+		if (round < SPINS)
+			Thread.onSpinWait();
+		else if (round < 2 * SPINS)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(PARK_NANOS);
+	}
+
+	/**
+	 * Notes the first failure of a stage and stops the others.
+	 */
+	private synchronized void fail(Throwable failure)
+	{
+		if (m_failure == null)
+			m_failure = failure;
+		m_stopped = true;
+	}
+
+	private void rethrow()
+		throws IOException
+	{
+		Throwable failure = m_failure;
+		if (failure == null)
+			return;
+		if (failure instanceof IOException)
+			throw (IOException)failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure;
+		if (failure instanceof Error)
+			throw (Error)failure;
+		throw new IOException(failure);
+	}
+
+	private static void awaitStages(CountDownLatch stages)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				stages.await();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;		// the stages use this parser's buffers, they have to be done first
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * A chunk of decoded input.
+	 */
+	private static final class Chunk
+	{
+		final char[] m_chars;
+		int m_length;
+		int m_pos;
+
+		Chunk(char[] chars)
+		{
+			m_chars = chars;
+		}
+	}
+
+	/**
+	 * What the tokenizer reads the chunks through.
+	 */
+	private final class ChunkReader extends Reader
+	{
+		private final SpscQueue<Chunk> m_full;
+		private final SpscQueue<Chunk> m_free;
+		private Chunk m_chunk = null;
+
+		ChunkReader(SpscQueue<Chunk> full, SpscQueue<Chunk> free)
+		{
+			m_full = full;
+			m_free = free;
+		}
+
+		public int read(char[] cbuf, int off, int len)
+			throws IOException
+		{
+			if (m_chunk != null && m_chunk.m_pos == m_chunk.m_length && m_chunk.m_length > 0)
+			{
+				put(m_free, m_chunk);
+				m_chunk = null;
+			}
+			if (m_chunk == null)
+			{
+				m_chunk = take(m_full);
+				if (m_chunk == null)
+					throw new IOException("stopped");		// the reason is thrown by parse()
+			}
+			if (m_chunk.m_length == 0)
+				return -1;
+			int n = Math.min(len, m_chunk.m_length - m_chunk.m_pos);
+			System.arraycopy(m_chunk.m_chars, m_chunk.m_pos, cbuf, off, n);
+			m_chunk.m_pos += n;
+			return n;
+		}
+
+		public void close()
+		{
+		}
+	}
+
+	/**
+	 * Runs the work of a stage, and notes what it throws.
+	 */
+	private abstract class Stage implements Runnable
+	{
+		private final CountDownLatch m_done;
+
+		Stage(CountDownLatch done)
+		{
+			m_done = done;
+		}
+
+		abstract void work()
+			throws Exception;
+
+		public void run()
+		{
+			try
+			{
+				work();
+			}
+			catch (Throwable t)
+			{
+				fail(t);
+			}
+			finally
+			{
+				m_done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Starts a thread for every stage.
+	 */
+	private static final class ThreadPerStage implements Executor
+	{
+		public void execute(Runnable stage)
+		{
+			Thread thread = new Thread(stage, "html-pipeline");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.arthurdo.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizes input that arrives in pieces, e.g. from a non-blocking channel,
+ * without holding a thread while waiting for the next piece. Input is
+ * pushed in with feed(), and the tokens completed so far are taken out
+ * with drain(). A token that is cut off by the end of a piece, be it a
+ * tag, a comment, a quoted attribute value or text in CDATA mode, is
+ * returned by the drain() after the piece that completes it. The
+ * tokenizer stops in the middle of such a token and carries on from there,
+ * so it costs the same however small the pieces are, and with
+ * HtmlStreamTokenizer.setMaxTokenSize() it holds no more than about a
+ * token's worth of input.
+ * <p>
+ * Token offsets count the characters fed in, also when the input is fed
+ * as bytes.
+ */
+public class HtmlPushTokenizer
+{
+	private final HtmlStreamTokenizer m_tok = new HtmlStreamTokenizer();
+	private final CharsetDecoder m_decoder;
+	private ByteBuffer m_partial = null;	// bytes of a character that is not complete yet
+	private boolean m_endOfInput = false;
+	private boolean m_done = false;
+
+	/**
+	 * Creates a tokenizer for input fed as characters or UTF-8 bytes.
+	 */
+	public HtmlPushTokenizer()
+	{
+		this(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param	charset  encoding of the input when it is fed as bytes
+	 */
+	public HtmlPushTokenizer(Charset charset)
+	{
+		m_decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * @return	the tokenizer doing the work, to change its settings
+	 *			and to read the current token in a HtmlTokenHandler.
+	 */
+	public HtmlStreamTokenizer getTokenizer()
+	{
+		return m_tok;
+	}
+
+	/**
+	 * Starts over on a new input, e.g. the next response on a keep-alive
+	 * connection. The tokenizer keeps its settings and its buffers, see
+	 * HtmlStreamTokenizer.reset(Reader).
+	 */
+	public void reset()
+	{
+		m_tok.resetPush();
+		m_decoder.reset();
+		m_partial = null;
+		m_endOfInput = false;
+		m_done = false;
+	}
+
+	/**
+	 * Adds the characters remaining in <i>chars</i> to the input.
+	 * The buffer's position is moved to its limit.
+	 */
+	public void feed(CharBuffer chars)
+	{
+		checkOpen();
+		int count = chars.remaining();
+		m_tok.pushSpace(count).put(chars);
+		m_tok.pushed(count);
+	}
+
+	/**
+	 * Adds the bytes remaining in <i>bytes</i> to the input. A character
+	 * split between two calls is decoded once its last byte is fed.
+	 * The buffer's position is moved to its limit.
+	 */
+	public void feed(ByteBuffer bytes)
+	{
+		checkOpen();
+		decode(bytes, false);
+	}
+
+	/**
+	 * Marks the end of the input. The last tokens can then be drained.
+	 */
+	public void endOfInput()
+	{
+		if (m_endOfInput)
+			return;
+		decode(ByteBuffer.allocate(0), true);
+		m_endOfInput = true;
+		m_tok.pushEnd();
+	}
+
+	/**
+	 * @return	true once all the tokens up to the end of the input
+	 *			have been drained.
+	 */
+	public boolean isDone()
+	{
+		return m_done;
+	}
+
+	/**
+	 * Passes every token completed so far to <i>handler</i>.
+	 *
+	 * @return	number of tokens passed
+	 */
+	public int drain(HtmlTokenHandler handler)
+		throws IOException
+	{
+		int count = 0;
+		while (!m_done)
+		{
+			int ttype = m_tok.nextPushedToken();
+			if (ttype == HtmlStreamTokenizer.TT_NEED_INPUT)
+				break;
+			if (ttype == HtmlStreamTokenizer.TT_EOF)
+				m_done = true;
+			else
+			{
+				handler.token(m_tok);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Fills <i>batch</i> with tokens completed so far, see
+	 * HtmlStreamTokenizer.nextTokens(TokenBatch).
+	 *
+	 * @return	number of tokens in the batch, 0 if no token is complete
+	 */
+	public int drain(TokenBatch batch)
+		throws IOException
+	{
+		batch.clear();
+		while (!m_done && !batch.isFull())
+		{
+			int ttype = m_tok.nextPushedToken();
+			if (ttype == HtmlStreamTokenizer.TT_NEED_INPUT)
+				break;
+			if (ttype == HtmlStreamTokenizer.TT_EOF)
+				m_done = true;
+			else
+				m_tok.addToBatch(batch);
+		}
+		return batch.size();
+	}
+
+	private void decode(ByteBuffer bytes, boolean endOfInput)
+	{
+		if (m_partial != null)
+		{
+			ByteBuffer joined = ByteBuffer.allocate(m_partial.remaining() + bytes.remaining());
+			joined.put(m_partial).put(bytes).flip();
+			bytes = joined;
+			m_partial = null;
+		}
+		CoderResult result;
+		do
+		{
+			// as many chars as bytes is nearly always enough, overflow asks for more
+			CharBuffer space = m_tok.pushSpace(Math.max(bytes.remaining(), 2));
+			int start = space.position();
+			result = m_decoder.decode(bytes, space, endOfInput);
+			if (endOfInput && result.isUnderflow())
+				result = m_decoder.flush(space);
+			m_tok.pushed(space.position() - start);
+		}
+		while (result.isOverflow());
+		if (bytes.hasRemaining())
+		{
+			// the decoder leaves a split character in the input, keep it for the next call
+			m_partial = ByteBuffer.allocate(bytes.remaining());
+			m_partial.put(bytes).flip();
+		}
+	}
+
+	private void checkOpen()
+	{
+		if (m_endOfInput)
+			throw new IllegalStateException("input has already ended");
+	}
+}
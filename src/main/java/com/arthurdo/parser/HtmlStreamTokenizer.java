@@ -20,27 +20,97 @@
 package com.arthurdo.parser;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class HtmlStreamTokenizer
 {
     private Reader m_in;
+	private CharSequence m_source = null;
+	private int m_sourcePos = 0;
+	private ByteBuffer[] m_bytes = null;
+	private int m_segmentShift = 31;
+	private long m_bytePos = 0;
+	private long m_byteEnd = 0;
+	private CharsetDecoder m_decoder = null;
+	private char[] m_window;
+	private char[] m_ownWindow = null;		// kept for the next input when m_window is the caller's array
+	private int m_pos = 0;
+	private int m_limit = 0;
+	private long m_base = 0;
+	private boolean m_inMemory = false;
+	private boolean m_push = false;
+	private boolean m_endOfInput = false;
+	private boolean m_underflow = false;		// pushed input ran out, more is to come
+	private int m_resume = RESUME_NONE;		// what readToken() was doing when it did
+	private boolean m_resumeContinued = false;
+	private boolean m_resumeHasAmp = false;
+	private int m_resumeLtcount = 0;
+	private int m_resumeCarried = 0;
+	private boolean m_filtered = false;
+	private boolean m_wantText = true;
+	private boolean m_wantTag = true;
+	private boolean m_wantComment = true;
+	private boolean m_wantBangTag = true;
+	private String[] m_tagNames = null;		// upper case
     private boolean m_unescape = false;
+	private boolean m_rawTextElements = false;
+	private int m_maxTokenSize = Integer.MAX_VALUE;
+	private TagSpans m_tagSpans = null;		// set to record where the attributes of a tag are
+	private boolean m_spansRecorded = false;
+	private boolean m_tableDriven = true;
     private boolean m_getEntities = false;
 
     private int m_state = STATE_TEXT;
     private int m_ttype;
 	private int m_pushback = 0;
 	private int m_lineno = 1;
+	private long[] m_newlines = new long[16];		// offsets of the newlines from the token on
+	private int m_newlineCount = 0;
+	private int m_firstLine = 1;		// line m_newlines starts on, unlike m_lineno every newline counts
+	private long m_firstLineStart = 0;		// and the offset where that line starts
 	private int m_comment = 0;
     private int m_tagquote;
-    private StringBuffer m_buf = new StringBuffer(128);
-    private StringBuffer m_whitespace = new StringBuffer();
+    private HtmlCharBuffer m_buf = new HtmlCharBuffer(BUFFER_SIZE);
+    private HtmlCharBuffer m_whitespace = new HtmlCharBuffer();
+    private StringBuffer m_legacyBuf = null;
+    private StringBuffer m_legacyWhitespace = null;
+    private boolean m_legacyValid = false;
+
+	private long m_tokenBegin = 0;		// offset of the token, markup included
+	private long m_tokenStart = 0;
+	private int m_tokenLength = 0;
+	private boolean m_partial = false;		// more of the token follows
+	private boolean m_truncated = false;		// the rest of the token was dropped
+	private boolean m_sliced = false;
+	private boolean m_materialized = false;
+	private boolean m_pendingUnescape = false;		// text token has entities left to unescape
+	private HtmlCharBuffer m_unescaped = null;
+	private boolean m_unescapedValid = false;
 
 	private char[] m_cdata_end = null;
 	private int m_cdata = -1;
 	private boolean m_cdata_pushback = false;
+	private RawTextScanner m_exitScanner = null;
+	private char[] m_cdata_seen = null;		// input chars matching the exit string so far
+	private int m_cdata_flush = 0;		// chars in front of them, left over from a full token
+	private boolean m_rawText = false;		// CDATA mode ends in front of the end tag
 	private boolean m_isCDTATA = false;
 	private static char[] m_xmlcdata_end = "]]>".toCharArray();
+	private static final char[] TEXTAREA_END = "</textarea".toCharArray();
+	private static final char[] TITLE_END = "</title".toCharArray();
+	private static final char[][] RAW_TEXT_END = {
+		"</script".toCharArray(), "</style".toCharArray(), TEXTAREA_END, TITLE_END
+	};
+	private static final HtmlTagParser TAG_PARSER = new HtmlTagParser();	// has no state of its own
+	private static final int STATE_MASK = (1 << TransitionTable.STATE_BITS) - 1;
 
     private static final int STATE_EOF = -1;
     private static final int STATE_COMMENT = -2;
@@ -51,16 +121,406 @@ public class HtmlStreamTokenizer
 	private static final int STATE_BANGTAG = -7;
 	private static final int STATE_ENTITYREF = -8;
 
+	/**
+	 * values of m_resume other than a TransitionTable state, which the
+	 * table engine carries on in
+	 */
+	private static final int RESUME_NONE = -2;
+	private static final int RESUME_SWITCH = -1;
+
+	/**
+	 * size of the input window, the input is read in blocks of this size
+	 * instead of one character at a time.
+	 */
+	private static final int WINDOW_SIZE = 8192;
+
+	/**
+	 * token buffers that grew past this many characters for an unusually
+	 * large token are given back once the token is done, so a tokenizer
+	 * that is reused does not keep its largest ever allocation.
+	 */
+	private static final int BUFFER_HIGH_WATER = 8 * WINDOW_SIZE;
+	private static final int BUFFER_SIZE = 128;
+
+	/**
+	 * a mapped file is split into segments of this size, since a single
+	 * ByteBuffer cannot hold more than 2 GB.
+	 */
+	private static final int MAP_SEGMENT_SHIFT = 30;
+
+	/**
+	 * Decodes <i>in</i> in the encoding its byte order mark or &lt;meta&gt;
+	 * declares, see HtmlCharsetSniffer.
+	 *
+	 * @deprecated	use HtmlStreamTokenizer(Reader) with a reader from
+	 *				HtmlCharsetSniffer.newReader(), or one that decodes in
+	 *				the encoding the document came with
+	 */
 	@Deprecated
     public HtmlStreamTokenizer(InputStream in)
 	{
-		this(new BufferedReader(new InputStreamReader(in)));
+		this(HtmlCharsetSniffer.newReader(in));
 	}
 
 	public HtmlStreamTokenizer(Reader in)
+	{
+		setInput(in);
+	}
+
+	/**
+	 * Resumes tokenizing from a checkpoint, see checkpoint(). The reader
+	 * must be positioned at the checkpoint's offset in the input the
+	 * checkpoint was taken from. Token offsets and line numbers carry on
+	 * from the checkpoint.
+	 *
+	 * @param	in  the rest of the input, from HtmlTokenizerCheckpoint.getOffset() on
+	 * @param	cp  checkpoint to continue from
+	 */
+	public HtmlStreamTokenizer(Reader in, HtmlTokenizerCheckpoint cp)
+	{
+		this(in);
+		m_base = cp.m_offset;
+		setState(cp);
+	}
+
+	/**
+	 * Tokenizes text that is already in memory. The array is scanned in place
+	 * and tokens are not copied out of it unless they have to be, see
+	 * {@link #getTokenSlice()}. Token offsets are indexes into <i>buf</i>.
+	 * The array must not be modified while it is being tokenized.
+	 *
+	 * @param	buf  characters to tokenize
+	 * @param	offset  index of the first character
+	 * @param	length  number of characters
+	 */
+	public HtmlStreamTokenizer(char[] buf, int offset, int length)
+	{
+		setInput(buf, offset, length);
+	}
+
+	public HtmlStreamTokenizer(char[] buf)
+	{
+		this(buf, 0, buf.length);
+	}
+
+	/**
+	 * Tokenizes UTF-8 encoded bytes without decoding them first. Markup is
+	 * found by looking at the bytes alone, which is safe because all the
+	 * delimiters are ASCII. A token is only decoded when its value is asked
+	 * for, see {@link #getTokenBytes()}. Token offsets are indexes into
+	 * <i>buf</i>.
+	 *
+	 * @param	buf  UTF-8 bytes to tokenize
+	 * @param	offset  index of the first byte
+	 * @param	length  number of bytes
+	 */
+	public HtmlStreamTokenizer(byte[] buf, int offset, int length)
+	{
+		this(new ByteBuffer[] { ByteBuffer.wrap(buf) }, 31, offset, offset + length);
+	}
+
+	public HtmlStreamTokenizer(byte[] buf)
+	{
+		this(buf, 0, buf.length);
+	}
+
+	/**
+	 * Tokenizes the UTF-8 encoded bytes from the buffer's position to its
+	 * limit, see HtmlStreamTokenizer(byte[], int, int). Token offsets are
+	 * relative to the buffer's position. The buffer's position and limit
+	 * are not changed.
+	 *
+	 * @param	buf  UTF-8 bytes to tokenize
+	 */
+	public HtmlStreamTokenizer(ByteBuffer buf)
+	{
+		this(new ByteBuffer[] { buf.slice() }, 31, 0, buf.remaining());
+	}
+
+	/**
+	 * @param	segments  the input, every segment but the last one holds
+	 *			exactly 1 &lt;&lt; <i>shift</i> bytes
+	 * @param	start  offset of the first byte to tokenize
+	 * @param	end  offset after the last byte to tokenize
+	 */
+	private HtmlStreamTokenizer(ByteBuffer[] segments, int shift, long start, long end)
+	{
+		setInput(segments, shift, start, end);
+	}
+
+	/**
+	 * Tokenizes a UTF-8 file by mapping it into memory rather than reading
+	 * it, see HtmlStreamTokenizer(byte[], int, int). Files over 2 GB are
+	 * mapped in several segments. Token offsets are offsets in the file.
+	 * The mapping is released when the tokenizer is garbage collected, the
+	 * file must not be truncated while it is being tokenized.
+	 *
+	 * @param	file  UTF-8 file to tokenize
+	 * @return	a tokenizer positioned at the start of the file
+	 */
+	public static HtmlStreamTokenizer map(Path file)
+		throws IOException
+	{
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try
+		{
+			long size = channel.size();
+			long segmentSize = 1L << MAP_SEGMENT_SHIFT;
+			ByteBuffer[] segments = new ByteBuffer[(int)Math.max(1, (size + segmentSize - 1) >>> MAP_SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; i++)
+			{
+				long position = (long)i << MAP_SEGMENT_SHIFT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+			}
+			return new HtmlStreamTokenizer(segments, MAP_SEGMENT_SHIFT, 0, size);
+		}
+		finally
+		{
+			channel.close();	// the mapping stays valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Tokenizes text that is already in memory. Tokens are not copied out of
+	 * <i>text</i> unless they have to be, see {@link #getTokenSlice()}.
+	 * Token offsets are indexes into <i>text</i>.
+	 *
+	 * @param	text  characters to tokenize
+	 */
+	public HtmlStreamTokenizer(CharSequence text)
+	{
+		setInput(text);
+	}
+
+	/**
+	 * Creates a tokenizer whose input is pushed into it, see HtmlPushTokenizer.
+	 */
+	HtmlStreamTokenizer()
+	{
+		setPushInput();
+	}
+
+	/**
+	 * Starts over on new input, as if the tokenizer had just been created
+	 * for it, but keeps the settings: unescaping, filters, raw text elements
+	 * and the maximum token size. The buffers are kept too, so a tokenizer
+	 * that is reused for many documents allocates next to nothing.
+	 *
+	 * @param	in  the next document
+	 */
+	public void reset(Reader in)
+	{
+		clear();
+		setInput(in);
+	}
+
+	/**
+	 * Starts over on characters in memory, see reset(Reader) and
+	 * HtmlStreamTokenizer(char[], int, int).
+	 */
+	public void reset(char[] buf, int offset, int length)
+	{
+		clear();
+		setInput(buf, offset, length);
+	}
+
+	public void reset(char[] buf)
+	{
+		reset(buf, 0, buf.length);
+	}
+
+	/**
+	 * Starts over on UTF-8 bytes, see reset(Reader) and
+	 * HtmlStreamTokenizer(byte[], int, int).
+	 */
+	public void reset(byte[] buf, int offset, int length)
+	{
+		clear();
+		setInput(new ByteBuffer[] { ByteBuffer.wrap(buf) }, 31, offset, offset + length);
+	}
+
+	public void reset(byte[] buf)
+	{
+		reset(buf, 0, buf.length);
+	}
+
+	/**
+	 * Starts over on UTF-8 bytes, see reset(Reader) and
+	 * HtmlStreamTokenizer(ByteBuffer).
+	 */
+	public void reset(ByteBuffer buf)
+	{
+		clear();
+		setInput(new ByteBuffer[] { buf.slice() }, 31, 0, buf.remaining());
+	}
+
+	/**
+	 * Starts over on text in memory, see reset(Reader) and
+	 * HtmlStreamTokenizer(CharSequence).
+	 */
+	public void reset(CharSequence text)
+	{
+		clear();
+		setInput(text);
+	}
+
+	/**
+	 * Starts over on pushed input, see HtmlPushTokenizer.reset().
+	 */
+	void resetPush()
+	{
+		clear();
+		setPushInput();
+	}
+
+	private void setInput(Reader in)
 	{
 		m_in = in;
+		m_window = ownWindow(WINDOW_SIZE);
+	}
+
+	private void setInput(char[] buf, int offset, int length)
+	{
+		m_window = buf;
+		m_pos = offset;
+		m_limit = offset + length;
+		m_firstLineStart = offset;
+		m_inMemory = true;
+	}
+
+	private void setInput(ByteBuffer[] segments, int shift, long start, long end)
+	{
+		m_bytes = segments;
+		m_segmentShift = shift;
+		m_bytePos = start;
+		m_byteEnd = end;
+		m_base = start;
+		m_firstLineStart = start;
+		m_window = ownWindow((int)Math.min(WINDOW_SIZE, Math.max(end - start, 1)));
+		m_inMemory = true;
+	}
+
+	private void setInput(CharSequence text)
+	{
+		CharBuffer cb = text instanceof CharBuffer ? (CharBuffer)text : null;
+		if (cb != null && cb.hasArray())
+		{
+			// scan the backing array in place
+			m_window = cb.array();
+			m_pos = cb.arrayOffset() + cb.position();
+			m_limit = cb.arrayOffset() + cb.limit();
+			m_base = -m_pos;
+		}
+		else
+		{
+			m_source = text;
+			m_window = ownWindow(Math.min(WINDOW_SIZE, Math.max(text.length(), 1)));
+		}
+		m_inMemory = true;
+	}
+
+	private void setPushInput()
+	{
+		m_window = ownWindow(WINDOW_SIZE);
+		m_inMemory = true;
+		m_push = true;
+	}
+
+	/**
+	 * @return	a window the tokenizer owns of at least <i>size</i> chars,
+	 *			the one from the last input if it is big enough
+	 */
+	private char[] ownWindow(int size)
+	{
+		if (m_ownWindow == null || m_ownWindow.length < size)
+			m_ownWindow = new char[size];
+		return m_ownWindow;
+	}
+
+	/**
+	 * Puts the settings back the way a new tokenizer has them, for a
+	 * tokenizer that is handed from one user to the next.
+	 */
+	void resetSettings()
+	{
+		m_unescape = false;
+		m_rawTextElements = false;
+		setAttributeSpans(false);
+		m_maxTokenSize = Integer.MAX_VALUE;
+		m_tableDriven = true;
+		setTokenFilter();
+		setTagFilter();
+	}
+
+	/**
+	 * Puts everything but the settings back the way a new tokenizer has it.
+	 */
+	private void clear()
+	{
+		m_in = null;
+		m_source = null;
+		m_sourcePos = 0;
+		m_bytes = null;
+		m_segmentShift = 31;
+		m_bytePos = 0;
+		m_byteEnd = 0;
+		m_pos = 0;
+		m_limit = 0;
+		m_base = 0;
+		m_inMemory = false;
+		m_push = false;
+		m_endOfInput = false;
+		m_underflow = false;
+		m_resume = RESUME_NONE;
+
 		m_state = STATE_TEXT;
+		m_ttype = 0;
+		m_pushback = 0;
+		m_lineno = 1;
+		m_newlineCount = 0;
+		m_firstLine = 1;
+		m_firstLineStart = 0;
+		m_comment = 0;
+		m_tagquote = 0;
+		m_tokenBegin = 0;
+		m_tokenStart = 0;
+		m_tokenLength = 0;
+		m_partial = false;
+		m_truncated = false;
+		m_sliced = false;
+		m_materialized = false;
+		m_pendingUnescape = false;
+		m_unescapedValid = false;
+		m_legacyValid = false;
+		m_buf.setLength(0);
+		m_whitespace.setLength(0);
+
+		m_cdata_end = null;
+		m_cdata = -1;
+		m_cdata_flush = 0;
+		m_cdata_pushback = false;
+		m_rawText = false;
+		m_isCDTATA = false;
+		m_window = null;		// the window of the last input may go too
+		trimBuffers();
+	}
+
+	/**
+	 * Gives back buffers that grew past BUFFER_HIGH_WATER. Only called
+	 * between tokens, when the buffers are empty.
+	 */
+	private void trimBuffers()
+	{
+		m_buf.shrink(BUFFER_HIGH_WATER, BUFFER_SIZE);
+		m_whitespace.shrink(BUFFER_HIGH_WATER, BUFFER_SIZE);
+		if (m_unescaped != null && m_unescaped.capacity() > BUFFER_HIGH_WATER)
+			m_unescaped = null;
+		if (m_legacyBuf != null && m_legacyBuf.capacity() > BUFFER_HIGH_WATER)
+			m_legacyBuf = null;		// made again with the next legacy call
+		if (m_newlines.length > BUFFER_HIGH_WATER && m_newlineCount <= 16)
+			m_newlines = Arrays.copyOf(m_newlines, 16);
+		if (m_ownWindow != null && m_ownWindow.length > BUFFER_HIGH_WATER && m_window != m_ownWindow)
+			m_ownWindow = null;		// grown for pushed input
 	}
 
     public boolean isUnescaped()
@@ -73,18 +533,404 @@ public class HtmlStreamTokenizer
         m_unescape = unescape;
     }
 
+	public boolean isRawTextElements()
+	{
+		return m_rawTextElements;
+	}
+
+	/**
+	 * Has the tokenizer itself enter CDATA mode after the start tag of a
+	 * &lt;script&gt;, &lt;style&gt;, &lt;textarea&gt; or &lt;title&gt;
+	 * element, so their content comes as one TT_TEXT token instead of
+	 * being tokenized as markup. The CDATA section ends in front of the
+	 * matching end tag, which is then returned as a TT_TAG like any other.
+	 * With setUnescaped(true) the text of &lt;textarea&gt; and &lt;title&gt;
+	 * is unescaped, the text of the other two never is. A start tag that
+	 * ends with "/&gt;" has no content and is left alone.
+	 *
+	 * @param	on  true to recognize the elements
+	 */
+	public void setRawTextElements(boolean on)
+	{
+		m_rawTextElements = on;
+	}
+
+	public boolean isAttributeSpans()
+	{
+		return m_tagSpans != null;
+	}
+
+	/**
+	 * Has the tokenizer note where the name and the attributes of a tag
+	 * are while it scans the tag, so parseTag(HtmlTag) can fill an HtmlTag
+	 * in without going over the tag again. This does not pay off for tags
+	 * that are never parsed, or for input given as bytes, whose tags are
+	 * parsed the usual way.
+	 */
+	public void setAttributeSpans(boolean on)
+	{
+		m_tagSpans = on ? new TagSpans() : null;
+		m_spansRecorded = false;
+	}
+
+	public boolean isTableDriven()
+	{
+		return m_tableDriven;
+	}
+
+	/**
+	 * Chooses between the two engines the tokenizer has. The table driven
+	 * one, the default, goes from state to state by looking the next char
+	 * up in TransitionTable, and takes runs of chars that stay in a state
+	 * in one go. The other one is a switch over the state per char, it
+	 * is the one used in CDATA mode and with setMaxTokenSize() or
+	 * setAttributeSpans(), whatever is chosen here. Both return the same
+	 * tokens.
+	 *
+	 * @param	on  false to use the switch for everything
+	 */
+	public void setTableDriven(boolean on)
+	{
+		m_tableDriven = on;
+	}
+
+	/**
+	 * @return	most characters in a token, 0 if there is no limit
+	 */
+	public int getMaxTokenSize()
+	{
+		return m_maxTokenSize == Integer.MAX_VALUE ? 0 : m_maxTokenSize;
+	}
+
+	/**
+	 * Bounds the memory the tokenizer needs, whatever the input. Text and
+	 * comments longer than <i>max</i> characters are returned in pieces of
+	 * about <i>max</i> characters, all but the last one with isPartial()
+	 * set. The last piece may be empty. An entity split between two pieces
+	 * is not unescaped. Tags and bang tags are cut off after <i>max</i>
+	 * characters and the rest up to the '&gt;' is skipped, see
+	 * isTruncated(), so a raw text element is only recognized if its start
+	 * tag fits. For input given as bytes the size is counted in bytes, and
+	 * a token is never cut inside a char.
+	 *
+	 * @param	max  most characters in a token, 0 for no limit
+	 */
+	public void setMaxTokenSize(int max)
+	{
+		if (max < 0)
+			throw new IllegalArgumentException("negative token size: " + max);
+		m_maxTokenSize = max == 0 ? Integer.MAX_VALUE : max;
+	}
+
+	/**
+	 * @return	true if the current token is a piece of a text or comment
+	 *			longer than getMaxTokenSize(), and the next token carries on
+	 *			with it
+	 */
+	public boolean isPartial()
+	{
+		return m_partial;
+	}
+
+	/**
+	 * @return	true if the current tag or bang tag was longer than
+	 *			getMaxTokenSize() and has been cut off
+	 */
+	public boolean isTruncated()
+	{
+		return m_truncated;
+	}
+
+	/**
+	 * Limits the tokens nextToken() returns to the given types. The other
+	 * tokens are scanned past without being buffered or unescaped.
+	 *
+	 * @param	ttypes  <b>TT_</b> token types to return, none for all of them
+	 */
+	public void setTokenFilter(int... ttypes)
+	{
+		boolean all = ttypes == null || ttypes.length == 0;
+		m_wantText = all;
+		m_wantTag = all;
+		m_wantComment = all;
+		m_wantBangTag = all;
+		for (int i = 0; !all && i < ttypes.length; i++)
+		{
+			switch (ttypes[i])
+			{
+			case TT_TEXT:
+				m_wantText = true;
+				break;
+			case TT_TAG:
+				m_wantTag = true;
+				break;
+			case TT_COMMENT:
+				m_wantComment = true;
+				break;
+			case TT_BANGTAG:
+				m_wantBangTag = true;
+				break;
+			}
+		}
+		updateFiltered();
+	}
+
+	/**
+	 * Limits the tag tokens nextToken() returns to tags with the given
+	 * names, start and end tags alike. Only tags are filtered, see also
+	 * setTokenFilter().
+	 *
+	 * @param	tagTypes  HtmlTag <b>T_</b> tag types to return, none for all tags
+	 */
+	public void setTagFilter(int... tagTypes)
+	{
+		if (tagTypes == null || tagTypes.length == 0)
+			m_tagNames = null;
+		else
+		{
+			m_tagNames = new String[tagTypes.length];
+			for (int i = 0; i < tagTypes.length; i++)
+			{
+				m_tagNames[i] = HtmlTag.getTagName(tagTypes[i]);
+				if (m_tagNames[i] == null)
+					throw new IllegalArgumentException("unknown tag type " + tagTypes[i]);
+			}
+		}
+		updateFiltered();
+	}
+
+	private void updateFiltered()
+	{
+		m_filtered = !m_wantText || !m_wantTag || !m_wantComment || !m_wantBangTag || m_tagNames != null;
+	}
+
+	/**
+	 * Takes a snapshot of the tokenizer between two tokens, from which
+	 * tokenizing can be resumed later, possibly by another process:
+	 * see restore() and HtmlStreamTokenizer(Reader, HtmlTokenizerCheckpoint).
+	 * The snapshot is small and serializable, and holds no input but for
+	 * the few chars a partly matched CDATA exit string carries over from
+	 * a piece of text, see setMaxTokenSize().
+	 *
+	 * @return	the state of the tokenizer between this token and the next one.
+	 */
+	public HtmlTokenizerCheckpoint checkpoint()
+	{
+		// the quote is left over from the last quoted value unless we are in one
+		int tagquote = m_state == STATE_TAG_QUOTE ? m_tagquote : 0;
+		long next = nextOffset();
+		int held = m_cdata > 0 ? m_cdata + m_cdata_flush : m_cdata_flush;
+		return new HtmlTokenizerCheckpoint(m_state, m_pushback, m_lineno, m_comment, tagquote,
+			m_cdata_end, m_cdata, held == 0 ? null : Arrays.copyOf(m_cdata_seen, held), m_cdata_flush,
+			m_cdata_pushback, m_rawText, m_partial, m_base + m_pos, getLineNumber(next), lineStart(next));
+	}
+
+	/**
+	 * Moves the tokenizer to a checkpoint taken from a tokenizer on the
+	 * same input, e.g. a file mapped again after a restart. Only input
+	 * that is in memory can be repositioned, for a Reader use
+	 * HtmlStreamTokenizer(Reader, HtmlTokenizerCheckpoint).
+	 *
+	 * @param	cp  checkpoint to continue from
+	 */
+	public void restore(HtmlTokenizerCheckpoint cp)
+	{
+		if (!m_inMemory)
+			throw new IllegalStateException("can only restore a tokenizer on input that is in memory");
+		if (m_in == null && m_source == null && m_bytes == null
+			&& (cp.m_offset - m_base < 0 || cp.m_offset - m_base > m_limit))
+			throw new IllegalArgumentException("checkpoint offset " + cp.m_offset + " is outside the input");
+		if (m_source != null)
+		{
+			m_sourcePos = (int)cp.m_offset;
+			m_base = cp.m_offset;
+			m_pos = m_limit = 0;
+		}
+		else if (m_bytes != null)
+		{
+			m_bytePos = cp.m_offset;
+			m_base = cp.m_offset;
+			m_pos = m_limit = 0;
+		}
+		else
+			m_pos = (int)(cp.m_offset - m_base);
+		setState(cp);
+	}
+
+	/**
+	 * Sets everything but the input position from a checkpoint.
+	 */
+	private void setState(HtmlTokenizerCheckpoint cp)
+	{
+		m_state = cp.m_state;
+		m_pushback = cp.m_pushback;
+		m_lineno = cp.m_lineno;
+		m_comment = cp.m_comment;
+		m_tagquote = cp.m_tagquote;
+		m_cdata_end = cp.m_cdata_end;
+		m_cdata = cp.m_cdata;
+		m_cdata_flush = cp.m_cdata_flush;
+		if (cp.m_cdata_held != null)
+		{
+			exitScanner();		// makes m_cdata_seen for the exit string
+			System.arraycopy(cp.m_cdata_held, 0, m_cdata_seen, 0, cp.m_cdata_held.length);
+		}
+		m_cdata_pushback = cp.m_cdata_pushback;
+		m_rawText = cp.m_rawText;
+		m_partial = cp.m_continued;
+
+		m_newlineCount = 0;
+		m_firstLine = cp.m_line;
+		m_firstLineStart = cp.m_lineStart;
+	}
+
+	/**
+	 * @return	the initial state of a tokenizer, as if the input started
+	 *			at <i>offset</i>.
+	 */
+	static HtmlTokenizerCheckpoint initialCheckpoint(long offset)
+	{
+		return new HtmlTokenizerCheckpoint(STATE_TEXT, 0, 1, 0, 0, null, -1, null, 0, false, false, false, offset, 1, offset);
+	}
+
+	/**
+	 * @return	the next token that passes the filters, see setTokenFilter()
+	 *			and setTagFilter().
+	 */
 	public int nextToken()
 		throws IOException
 	{
-		m_buf.setLength(0);
-		m_whitespace.setLength(0);
-		int ltcount = 0;
-		m_isCDTATA = false;
-		boolean hasAmp = false;
+		if (!m_filtered)
+			return readToken();
+		while (true)
+		{
+			int ttype = readToken();
+			if (ttype == TT_EOF || ttype == TT_NEED_INPUT || wanted(ttype))
+				return ttype;
+		}
+	}
+
+	private int readToken()
+		throws IOException
+	{
+		boolean continued;
+		int ltcount;
+		boolean hasAmp;
+		int carried;
+		int resume = m_resume;
+		m_underflow = false;
+		if (resume == RESUME_NONE)
+		{
+			m_buf.setLength(0);
+			m_whitespace.setLength(0);
+			if (m_buf.capacity() > BUFFER_HIGH_WATER)
+				trimBuffers();		// after an unusually large token
+			m_tokenBegin = nextOffset();
+			dropNewlines(m_tokenBegin);
+			m_tokenStart = m_base + m_pos;		// where an empty token is
+			m_tokenLength = 0;
+			continued = m_partial;		// an empty last piece still ends the token
+			m_partial = false;
+			m_truncated = false;
+			m_sliced = m_inMemory;
+			m_materialized = false;
+			m_pendingUnescape = false;
+			m_unescapedValid = false;
+			m_legacyValid = false;
+			ltcount = 0;
+			m_isCDTATA = false;
+			hasAmp = false;
+
+			if (m_tagSpans != null)
+				m_tagSpans.clear();
+			m_spansRecorded = m_tagSpans != null && m_bytes == null;
+			carried = m_state == STATE_COMMENT ? Math.min(m_comment, 2) : 0;
+			if (carried > 0)
+				carryDashes();
+		}
+		else
+		{
+			// pushed input ran out in the middle of this token, carry on
+			// where it stopped
+			m_resume = RESUME_NONE;
+			continued = m_resumeContinued;
+			ltcount = m_resumeLtcount;
+			hasAmp = m_resumeHasAmp;
+			carried = m_resumeCarried;
+			if (resume >= 0)
+				return m_ttype = readTableToken(resume, hasAmp, ltcount);
+		}
+
+		if (m_rawText && m_state == STATE_TEXT && m_cdata == 0 && m_cdata_flush == 0 && m_pushback == 0)
+		{
+			boolean done = readRawText(continued);
+			if (m_underflow)
+				return needInput(RESUME_SWITCH, continued, hasAmp, ltcount, carried);
+			if (done)
+			{
+				m_pendingUnescape = m_unescape && isEscapableRawText(m_cdata_end);
+				return m_ttype = TT_TEXT;
+			}
+		}
+
+		if (resume == RESUME_NONE && m_tableDriven && m_pushback >= 0 && m_cdata == -1 && m_maxTokenSize == Integer.MAX_VALUE
+			&& m_tagSpans == null && !m_getEntities && carried == 0)
+		{
+			int state = tableState();
+			if (state >= 0)
+				return m_ttype = readTableToken(state, false, 0);
+		}
 
 		while (true)
 		{
 			int c;
+			boolean pushedBack = false;
+
+			if (m_cdata_flush > 0 && !flushHeld())
+				return partialToken(hasAmp);
+
+			if (m_tokenLength >= m_maxTokenSize && m_tokenLength > carried && m_pushback == 0 && !inChar(m_pos)
+				&& (m_state == STATE_TEXT || m_state == STATE_COMMENT))
+				return partialToken(hasAmp);		// in CDATA mode, a partly matched exit string carries over
+
+			if (m_state == STATE_TEXT && m_cdata == -1 && m_pushback == 0 && m_pos < m_limit)
+			{
+				// fast path: take a plain run of text in one go
+				int end = HtmlUtils.scanText(m_window, m_pos, runLimit(m_limit));
+				if (end > m_pos)
+				{
+					appendRun(end);
+					continue;		// the token may be full now
+				}
+			}
+			else if (m_state == STATE_TEXT && m_cdata == 0 && m_pushback == 0 && m_pos < m_limit)
+			{
+				// raw text: search the window for the exit string, and take
+				// everything up to it, or up to where it may start, in one go
+				RawTextScanner exit = exitScanner();
+				int at = exit.indexOf(m_window, m_pos, m_limit);
+				int end = at < 0 ? m_limit - exit.length() + 1 : at;
+				if (runLimit(end) < end)
+				{
+					end = runLimit(end);
+					at = -1;		// the exit string is for the next piece
+				}
+				boolean took = end > m_pos;
+				if (took)
+				{
+					countLines(m_pos, end);
+					appendRun(end);
+				}
+				if (at >= 0)
+				{
+					countLines(at, at + exit.length());
+					m_pos = at + exit.length();
+					return exitCDATA();
+				}
+				if (took)
+					continue;		// the token may be full now
+
+			}
 
 			if (m_pushback != 0)
 			{
@@ -92,31 +938,51 @@ public class HtmlStreamTokenizer
 				if (c == '\n')
 					m_lineno--;		// don't count newline twice
 				m_pushback = 0;
+				pushedBack = true;
 			}
 			else if (m_cdata < -1)
-				c = m_cdata_end[m_cdata++ + m_cdata_end.length + 1];
-			else
 			{
-				c = m_in.read();
+				c = m_cdata_end[m_cdata++ + m_cdata_end.length + 1];
+				if (m_sliced)
+					unslice();		// replayed chars are not where the token is in the input
 			}
+			else if (m_pos < m_limit)
+				c = m_window[m_pos++];
+			else
+				c = fill() ? m_window[m_pos++] : -1;
 
 			if (c < 0)
 			{
+				if (m_underflow)
+					return needInput(RESUME_SWITCH, continued, hasAmp, ltcount, carried);
+				if (m_state == STATE_TEXT && m_cdata > 0)
+				{
+					// the input ends in the middle of the exit string, what
+					// was matched of it is text after all
+					m_cdata_flush = m_cdata;
+					m_cdata = 0;
+					if (!flushHeld())
+						return partialToken(hasAmp);
+				}
 				int state = m_state;
 				m_state = STATE_EOF;
 
-				if (m_buf.length() > 0 && state == STATE_TEXT)
+				if ((m_tokenLength > 0 || continued) && state == STATE_TEXT)
 				{
-					if (m_unescape && hasAmp)
-						unescape(m_buf);
+					m_pendingUnescape = m_unescape && hasAmp;
 					return m_ttype = TT_TEXT;
 				}
+				else if (continued && state == STATE_COMMENT)
+					return m_ttype = TT_COMMENT;
 				else
 					return m_ttype = TT_EOF;
 			}
 
 			if (c == '\n')
+			{
 				m_lineno++;
+				newline(m_base + m_pos - 1);
+			}
 
 			switch (m_state)
 			{
@@ -125,41 +991,54 @@ public class HtmlStreamTokenizer
 					if (m_cdata > -1)
 					{
 						//we're in cdata mode
-						if ((Character.toUpperCase(m_cdata_end[m_cdata]) == c) ||
-							(Character.toLowerCase(m_cdata_end[m_cdata]) == c)) // support case sensitive exit strings
+						RawTextScanner exit = exitScanner();
+						m_cdata_seen[m_cdata] = (char)c;
+						if (exit.matches(m_cdata, c))	// support case sensitive exit strings
 						{
-							if (++m_cdata == m_cdata_end.length)
-							{
-								if (m_cdata_pushback)
-									m_cdata = -m_cdata_end.length -1;
-								else
-									m_cdata = -1;
-								m_isCDTATA = true;
-								return m_ttype = TT_TEXT;
-							}
+							if (++m_cdata == exit.length())
+								return exitCDATA();
 						}
 						else
 						{
-							if (m_cdata > 0)
-							{
-								m_buf.append(m_cdata_end, 0, m_cdata);
-								m_cdata = 0;
-							}
-							m_buf.append((char)c);
+							// the exit string may still start further on in
+							// what was matched, or with c itself
+							int keep = exit.overlap(m_cdata_seen, m_cdata + 1);
+							m_cdata_flush = m_cdata + 1 - keep;
+							m_cdata = keep;
+							if (!flushHeld())
+								return partialToken(hasAmp);
 						}
 
 					}
 					else if (c == '<')
 					{
 						boolean inCDATApushback = m_cdata < -1;
-						int peek = inCDATApushback ? m_cdata_end[m_cdata++  + m_cdata_end.length + 1] : m_in.read();
+						int peek = inCDATApushback ? m_cdata_end[m_cdata++  + m_cdata_end.length + 1] : read();
+						if (inCDATApushback && m_sliced)
+							unslice();
+						if (peek < 0 && m_underflow)
+						{
+							// read the '<' again when there is more input
+							if (pushedBack)
+								m_pushback = c;
+							else
+								m_pos--;
+							return needInput(RESUME_SWITCH, continued, hasAmp, ltcount, carried);
+						}
 
 						if (peek == '!')
 							m_state = STATE_BANGTAG;
 						else if (peek == '<')
 						{
+							if (m_tokenLength + 2 > m_maxTokenSize && m_tokenLength > 0 && !inCDATApushback)
+							{
+								// the pair starts the next piece
+								m_pos--;
+								m_pushback = c;
+								return partialToken(hasAmp);
+							}
 							// handle <<, some people use it in <pre>
-							m_buf.append("<<");
+							appendRecent("<<");
 							break;
 						}
 						else
@@ -170,10 +1049,9 @@ public class HtmlStreamTokenizer
 							m_state = STATE_TAG;
 						}
 
-						if (m_buf.length() > 0)
+						if (m_tokenLength > 0 || continued)
 						{
-							if (m_unescape && hasAmp)
-								unescape(m_buf);
+							m_pendingUnescape = m_unescape && hasAmp;
 							return m_ttype = TT_TEXT;
 						}
 					}
@@ -202,7 +1080,7 @@ public class HtmlStreamTokenizer
 							else
 								hasAmp = true;
 						}
-						m_buf.append((char)c);
+						append(c);
 					}
 				}
 				break;
@@ -226,50 +1104,52 @@ public class HtmlStreamTokenizer
 					if (c == '>')
 					{
 						m_state = STATE_TEXT;
+						if (m_rawTextElements)
+							startRawText();
 						return m_ttype = TT_TAG;
 					}
 					else if (c == HtmlUtils.C_SINGLEQUOTE || c == HtmlUtils.C_DOUBLEQUOTE)
 					{
 						// handle quotes inside tag
 						m_tagquote = c;
-						m_buf.append((char)c);
+						appendTag(c);
 						m_state = STATE_TAG_QUOTE;
 					}
 					else
 					{
-						m_buf.append((char)c);
+						appendTag(c);
 					}
 				}
 				break;
 			case STATE_BANGTAG:
 				{
-					int buflen = m_buf.length();
+					int buflen = m_tokenLength;
 					if (c == '<')
 					{
 						++ltcount;
-						m_buf.append((char)c);
+						append(c);
 					}
 					else if (c == '>' && --ltcount < 0)
 					{
 						m_state = STATE_TEXT;
 						return m_ttype = TT_BANGTAG;
 					}
-				    else if (c == '-' && buflen == 1 && m_buf.charAt(0) == '-')
+				    else if (c == '-' && buflen == 1 && !m_truncated && tokenCharAt(0) == '-')
 					{
 						// handle <!--
-						m_buf.setLength(0);
+						clearToken();
 						m_state = STATE_COMMENT;
 					}
-					else if (buflen == 6 && c == '[' && m_buf.toString().equals("[CDATA[") )
+					else if (buflen == 6 && !m_truncated && c == '[' && tokenEquals("[CDATA[") )
 					{
 						// handle <![CDATA[
-						m_buf.setLength(0);
+						clearToken();
 						enterCDATAMode(m_xmlcdata_end, false);
 						m_state = STATE_TEXT;
 					}
 					else
 					{
-						m_buf.append((char)c);
+						append(c);
 					}
 				}
 				break;
@@ -284,7 +1164,7 @@ public class HtmlStreamTokenizer
 					}
 					else
 					{
-						m_buf.append((char)c);
+						appendTag(c);
 						if (c == m_tagquote)
 						{
 							m_state = STATE_TAG;
@@ -297,7 +1177,7 @@ public class HtmlStreamTokenizer
 				{
 					if (c == '>' && m_comment >= 2)
 					{
-						m_buf.setLength(m_buf.length() - 2);
+						truncateToken(m_tokenLength - 2);
 						m_comment = 0;
 						m_state = STATE_TEXT;
 						return m_ttype = TT_COMMENT;
@@ -311,7 +1191,7 @@ public class HtmlStreamTokenizer
 						m_comment = 0;
 					}
 
-					m_buf.append((char)c);
+					append(c);
 				}
 				break;
 			case STATE_ENTITYREF:
@@ -323,65 +1203,1308 @@ public class HtmlStreamTokenizer
 						m_state = STATE_TEXT;
 						return m_ttype = TT_ENTITYREFERENCE;
 					}
-					m_buf.append((char)c);
+					append(c);
 				}
 				break;
 			}
 		}
 	}
 
-    /**
-     * @return	token type, one of the <b>TT_</b> defines
-     */
-    public final int getTokenType()
-    {
-        return m_ttype;
-    }
+	/**
+	 * @return	the TransitionTable state to read the next token in, or -1
+	 *			if it is one for the switch engine
+	 */
+	private int tableState()
+	{
+		int state;
+		switch (m_state)
+		{
+		case STATE_TEXT:
+			state = TransitionTable.TEXT;
+			break;
+		case STATE_TAG:
+			state = TransitionTable.TAG;
+			break;
+		case STATE_TAG_QUOTE:
+			state = m_tagquote == HtmlUtils.C_SINGLEQUOTE ? TransitionTable.TAG_SQUOTE : TransitionTable.TAG_DQUOTE;
+			break;
+		case STATE_BANGTAG:
+			state = TransitionTable.BANG_START;
+			break;
+		case STATE_COMMENT:
+			state = TransitionTable.COMMENT;
+			break;
+		default:
+			return -1;
+		}
+		if (m_pushback > 0)
+		{
+			// the char after a '<' is read again, from the window
+			if (m_state != STATE_TAG || m_pos == 0 || m_window[m_pos - 1] != m_pushback)
+				return -1;
+			if (m_pushback == '\n')
+				m_lineno--;		// don't count newline twice
+			m_pos--;
+			m_pushback = 0;
+		}
+		return state;
+	}
 
-    /**
-     * @return	string value of the token
-     */
-    public final StringBuffer getStringValue()
-    {
-        return m_buf;
-    }
+	/**
+	 * Reads the next token with the TransitionTable. The window chars from
+	 * m_pos up to <i>i</i> are the run that goes with the token next, they
+	 * are added to it when the run ends.
+	 *
+	 * @param	state  a TransitionTable state
+	 * @param	hasAmp  the token so far has an '&amp;'
+	 * @param	ltcount  '&lt;'s in the bang tag so far that want a '&gt;'
+	 * @return	token type, or TT_NEED_INPUT
+	 */
+	private int readTableToken(int state, boolean hasAmp, int ltcount)
+		throws IOException
+	{
+		int[] transitions = TransitionTable.TRANSITIONS;
+		byte[] classes = TransitionTable.CLASSES;
+		char[] window = m_window;
+		int i = m_pos;
 
-    /**
-     * @return string value of the token, including characters stripped off by the tokenizer
-     */
+		while (true)
+		{
+			if (i == m_limit)
+			{
+				if (i > m_pos)
+					appendRun(i);
+				if (!fill())
+				{
+					if (m_underflow)
+						return needInput(state, false, hasAmp, ltcount, 0);
+					return endTableToken(state, hasAmp);
+				}
+				window = m_window;
+				i = m_pos;
+			}
+			if (state == TransitionTable.TEXT)
+			{
+				// take a run of plain text in one go, as the table would
+				i = HtmlUtils.scanText(window, i, m_limit);
+				if (i == m_limit)
+					continue;
+			}
+			char c = window[i];
+			int cell = transitions[state << TransitionTable.CLASS_BITS | (c < classes.length ? classes[c] : TransitionTable.OTHER)];
+			if (cell == state)
+			{
+				i++;		// APPEND, and the state stays
+				continue;
+			}
+
+			switch (cell >>> TransitionTable.STATE_BITS)
+			{
+			case TransitionTable.APPEND:
+				break;
+			case TransitionTable.NEWLINE_APPEND:
+				m_lineno++;
+				newline(m_base + i);
+				break;
+			case TransitionTable.AMP_APPEND:
+				hasAmp = true;
+				break;
+			case TransitionTable.SKIP:
+				if (i > m_pos)
+					appendRun(i);
+				m_pos = i + 1;
+				break;
+			case TransitionTable.DOUBLE_LT:
+				// handle <<, some people use it in <pre>
+				m_pos = i + 1;
+				appendRecent("<<");
+				break;
+			case TransitionTable.START_BANGTAG:
+				m_pos = i + 1;
+				m_state = STATE_BANGTAG;
+				if (m_tokenLength > 0)
+				{
+					m_pendingUnescape = m_unescape && hasAmp;
+					return TT_TEXT;
+				}
+				break;
+			case TransitionTable.START_TAG:
+				m_state = STATE_TAG;
+				if (m_tokenLength > 0)
+				{
+					m_pushback = c;
+					m_pos = i + 1;
+					m_pendingUnescape = m_unescape && hasAmp;
+					return TT_TEXT;
+				}
+				if (c == '\n')
+					m_lineno--;		// as the switch engine does with its pushback
+				state = cell & STATE_MASK;
+				continue;		// c is the first char of the tag
+			case TransitionTable.END_TAG:
+				if (i > m_pos)
+					appendRun(i);
+				m_pos = i + 1;
+				m_state = STATE_TEXT;
+				if (m_rawTextElements)
+					startRawText();
+				return TT_TAG;
+			case TransitionTable.OPEN_QUOTE:
+				m_tagquote = c;
+				break;
+			case TransitionTable.BANG_LT:
+				++ltcount;
+				break;
+			case TransitionTable.BANG_GT:
+				if (--ltcount < 0)
+				{
+					if (i > m_pos)
+						appendRun(i);
+					m_pos = i + 1;
+					m_state = STATE_TEXT;
+					return TT_BANGTAG;
+				}
+				break;
+			case TransitionTable.START_COMMENT:
+				// handle <!--, the '-' before is dropped
+				m_pos = i + 1;
+				clearToken();
+				m_state = STATE_COMMENT;
+				break;
+			case TransitionTable.COMMENT_DASH_APPEND:
+				m_comment++;
+				break;
+			case TransitionTable.COMMENT_OTHER:
+				m_comment = 0;
+				break;
+			case TransitionTable.COMMENT_NEWLINE:
+				m_comment = 0;
+				m_lineno++;
+				newline(m_base + i);
+				break;
+			case TransitionTable.END_COMMENT:
+				if (m_comment >= 2)
+				{
+					if (i > m_pos)
+						appendRun(i);
+					truncateToken(m_tokenLength - 2);
+					m_pos = i + 1;
+					m_comment = 0;
+					m_state = STATE_TEXT;
+					return TT_COMMENT;
+				}
+				m_comment = 0;
+				break;
+			}
+			state = cell & STATE_MASK;
+			i++;
+		}
+	}
+
+	/**
+	 * Ends the token readTableToken() was reading at the end of the input.
+	 */
+	private int endTableToken(int state, boolean hasAmp)
+	{
+		m_state = STATE_EOF;
+		if (m_tokenLength > 0 && (state == TransitionTable.TEXT || state == TransitionTable.TEXT_LT))
+		{
+			if (state == TransitionTable.TEXT_LT)
+			{
+				m_state = STATE_TAG;		// the '<' is the start of nothing
+				m_pushback = -1;
+			}
+			m_pendingUnescape = m_unescape && hasAmp;
+			return TT_TEXT;
+		}
+		return TT_EOF;
+	}
+
+	/**
+	 * Reads tokens into <i>batch</i> until it is full or the input ends.
+	 * This saves a call per token and per accessor, and the values stay
+	 * valid until the batch is filled again. The tokenizer reads ahead of
+	 * the consumer, so enterCDATAMode() only takes effect from the next
+	 * batch on; consumers that switch modes after a tag should use
+	 * nextToken() instead. getTokenType() and the other accessors refer to
+	 * the last token in the batch.
+	 *
+	 * @param	batch  the batch to fill, its previous contents are discarded
+	 * @return	number of tokens read, 0 at end of input
+	 */
+	public int nextTokens(TokenBatch batch)
+		throws IOException
+	{
+		batch.clear();
+		while (!batch.isFull() && nextToken() != TT_EOF)
+			addToBatch(batch);
+		return batch.size();
+	}
+
+	/**
+	 * Appends the current token to <i>batch</i>.
+	 */
+	void addToBatch(TokenBatch batch)
+	{
+		HtmlCharBuffer arena = batch.arena();
+		int start = arena.length();
+		if (m_materialized || m_pendingUnescape || m_bytes != null || !m_sliced)
+			arena.append(getTokenValue());
+		else if (m_source != null)
+			arena.append(m_source, (int)m_tokenStart, (int)m_tokenStart + m_tokenLength);
+		else
+			arena.append(m_window, (int)(m_tokenStart - m_base), m_tokenLength);
+		batch.add(m_ttype, start, m_lineno, getColumnNumber(), m_tokenStart, m_isCDTATA, m_partial);
+	}
+
+	/**
+	 * Reads the next token from pushed input. If the input runs out before
+	 * the token is complete, the state the tokenizer is in is kept, and
+	 * the next call carries on from there once more input has been pushed.
+	 * Every char is scanned once, however the input is cut up.
+	 *
+	 * @return	token type, or TT_NEED_INPUT
+	 */
+	int nextPushedToken()
+		throws IOException
+	{
+		return nextToken();
+	}
+
+	/**
+	 * Notes where readToken() stopped for want of pushed input.
+	 *
+	 * @param	resume  RESUME_SWITCH, or the TransitionTable state to carry
+	 *				on in
+	 * @return	TT_NEED_INPUT
+	 */
+	private int needInput(int resume, boolean continued, boolean hasAmp, int ltcount, int carried)
+	{
+		m_resume = resume;
+		m_resumeContinued = continued;
+		m_resumeHasAmp = hasAmp;
+		m_resumeLtcount = ltcount;
+		m_resumeCarried = carried;
+		return m_ttype = TT_NEED_INPUT;
+	}
+
+	/**
+	 * Makes room for at least <i>count</i> more pushed characters. Input
+	 * before the current position is dropped, which invalidates the
+	 * current token. A token that is not complete yet is copied out of
+	 * the input first, so the window only ever holds what has not been
+	 * read, and with setMaxTokenSize() the memory the tokenizer needs is
+	 * bounded however long the token is.
+	 *
+	 * @return	the free part of the window, to be followed by pushed(int)
+	 */
+	CharBuffer pushSpace(int count)
+	{
+		if (m_window.length - m_limit < count)
+		{
+			if (m_resume != RESUME_NONE && m_sliced)
+				unslice();
+			int unread = m_limit - m_pos;
+			char[] window = m_window;
+			if (window.length - unread < count)
+				window = m_ownWindow = new char[Math.max(window.length * 2, unread + count)];
+			System.arraycopy(m_window, m_pos, window, 0, unread);
+			m_window = window;
+			m_base += m_pos;
+			m_pos = 0;
+			m_limit = unread;
+		}
+		return CharBuffer.wrap(m_window, m_limit, m_window.length - m_limit);
+	}
+
+	/**
+	 * Adds <i>count</i> characters written into pushSpace() to the input.
+	 */
+	void pushed(int count)
+	{
+		m_limit += count;
+	}
+
+	/**
+	 * Tells a tokenizer on pushed input that no more input will follow.
+	 */
+	void pushEnd()
+	{
+		m_endOfInput = true;
+	}
+
+	/**
+	 * Adds the character just read to the current token. Only tags and
+	 * bang tags get this far past the maximum token size, they are cut off.
+	 */
+	private void append(int c)
+	{
+		// text and comments are cut into pieces instead, see partialToken()
+		if (m_tokenLength >= m_maxTokenSize && m_state != STATE_TEXT && m_state != STATE_COMMENT
+			&& (m_truncated || !inChar(m_pos - 1)))
+		{
+			m_truncated = true;
+			return;
+		}
+		if (m_tokenLength++ == 0)
+			m_tokenStart = m_base + m_pos - 1;
+		if (!m_sliced && buffering())
+			m_buf.append((char)c);
+	}
+
+	/**
+	 * Adds a char of a tag to the current token, and notes it for
+	 * setAttributeSpans().
+	 */
+	private void appendTag(int c)
+	{
+		append(c);
+		if (m_tagSpans != null && !m_truncated)
+			m_tagSpans.add((char)c);
+	}
+
+	/**
+	 * @return	<i>end</i>, moved back to the start of the char it is in
+	 */
+	private int charEnd(int end)
+	{
+		while (end > m_pos && inChar(end))
+			end--;
+		return end;
+	}
+
+	/**
+	 * @return	<i>end</i>, or the window index at which the current token
+	 *			reaches the maximum token size if that is before it, never
+	 *			inside a char
+	 */
+	private int runLimit(int end)
+	{
+		end = charEnd(end);
+		int room = m_maxTokenSize - m_tokenLength;
+		if (end - m_pos <= room)
+			return end;
+		int limit = m_pos + Math.max(room, 0);
+		while (limit > m_pos && inChar(limit))
+			limit--;
+		if (limit == m_pos && m_tokenLength == 0)
+		{
+			// a single char is bigger than a token may be
+			limit++;
+			while (limit < end && inChar(limit))
+				limit++;
+		}
+		return limit;
+	}
+
+	/**
+	 * @return	true if the input is bytes and the byte at window index
+	 *			<i>i</i> is in the middle of a UTF-8 sequence, so a token
+	 *			cannot be cut in front of it
+	 */
+	private boolean inChar(int i)
+	{
+		if (m_bytes == null || i < 0)
+			return false;
+		if (i < m_limit)
+			return (m_window[i] & 0xc0) == 0x80;
+		// a char may go on past the window
+		return m_base + i < m_byteEnd && (byteAt(m_base + i) & 0xc0) == 0x80;
+	}
+
+	/**
+	 * Returns the current text or comment, which has reached the maximum
+	 * token size, as a piece. The tokenizer stays in the same state, so
+	 * the next token carries on with it.
+	 */
+	private int partialToken(boolean hasAmp)
+	{
+		m_partial = true;
+		if (m_state == STATE_COMMENT)
+		{
+			// the dashes that may end the comment go to the next piece
+			truncateToken(m_tokenLength - Math.min(m_comment, 2));
+			return m_ttype = TT_COMMENT;
+		}
+		m_pendingUnescape = m_unescape && hasAmp;
+		return m_ttype = TT_TEXT;
+	}
+
+	/**
+	 * Starts the next piece of a comment with the dashes held back from the
+	 * last one.
+	 */
+	private void carryDashes()
+	{
+		int count = Math.min(m_comment, 2);
+		if (m_sliced)
+			unslice();		// the dashes may be gone from the window
+		m_tokenLength = count;
+		m_tokenStart = m_base + m_pos - count;
+		if (buffering())
+			m_buf.append("--", 0, count);
+	}
+
+	/**
+	 * Adds the window characters up to <i>end</i> to the current token
+	 * and consumes them.
+	 */
+	private void appendRun(int end)
+	{
+		int len = end - m_pos;
+		if (m_tokenLength == 0)
+			m_tokenStart = m_base + m_pos;
+		m_tokenLength += len;
+		if (!m_sliced && buffering())
+			m_buf.append(m_window, m_pos, len);
+		m_pos = end;
+	}
+
+	/**
+	 * Adds the last <i>s.length()</i> characters read to the current token.
+	 */
+	private void appendRecent(String s)
+	{
+		if (m_tokenLength == 0)
+			m_tokenStart = m_base + m_pos - s.length();
+		m_tokenLength += s.length();
+		if (!m_sliced && buffering())
+			m_buf.append(s);
+	}
+
+	/**
+	 * Adds the m_cdata_flush chars held back in front of a possible CDATA
+	 * exit string to the current token, or as many of them as fit. The
+	 * rest wait for the next piece.
+	 *
+	 * @return	true if all of them were added
+	 */
+	private boolean flushHeld()
+	{
+		int count = Math.min(m_cdata_flush, Math.max(m_maxTokenSize - m_tokenLength, 0));
+		while (count < m_cdata_flush && m_bytes != null && (m_cdata_seen[count] & 0xc0) == 0x80)
+			count++;		// not inside a char
+		int rest = m_cdata_flush - count + m_cdata;
+		appendMatched(count, rest);
+		System.arraycopy(m_cdata_seen, count, m_cdata_seen, 0, rest);
+		m_cdata_flush -= count;
+		return m_cdata_flush == 0;
+	}
+
+	/**
+	 * Adds the first <i>count</i> chars that were held back while matching
+	 * the CDATA exit string to the current token. They were read just
+	 * before the last <i>keep</i> chars. The token stays a slice of the
+	 * input only if the chars are where the token is in the input.
+	 */
+	private void appendMatched(int count, int keep)
+	{
+		long start = m_base + m_pos - keep - count;
+		if (m_sliced)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				// pushed input may have dropped chars held over from the last piece
+				if (start + i < m_base || sourceCharAt(start + i) != m_cdata_seen[i])
+				{
+					unslice();
+					break;
+				}
+			}
+		}
+		if (m_tokenLength == 0)
+			m_tokenStart = start;
+		m_tokenLength += count;
+		if (!m_sliced && buffering())
+			m_buf.append(m_cdata_seen, 0, count);
+	}
+
+	/**
+	 * @return	the scanner for the current CDATA exit string
+	 */
+	private RawTextScanner exitScanner()
+	{
+		if (m_exitScanner == null || !m_exitScanner.scansFor(m_cdata_end))
+		{
+			m_exitScanner = new RawTextScanner(m_cdata_end);
+			m_cdata_seen = new char[m_cdata_end.length];
+		}
+		return m_exitScanner;
+	}
+
+	/**
+	 * Leaves CDATA mode, the exit string has just been read.
+	 *
+	 * @return	TT_TEXT, for the text before the exit string
+	 */
+	private int exitCDATA()
+	{
+		if (m_cdata_pushback)
+			m_cdata = -m_cdata_end.length -1;
+		else
+			m_cdata = -1;
+		m_isCDTATA = true;
+		return m_ttype = TT_TEXT;
+	}
+
+	/**
+	 * Enters CDATA mode if the tag just read is the start tag of a raw text
+	 * element. The name is looked at the way HtmlTagParser finds it.
+	 */
+	private void startRawText()
+	{
+		int i = 0;
+		while (i < m_tokenLength && HtmlUtils.isSpace(tokenCharAt(i)))
+			i++;
+		int start = i;
+		char c;
+		while (i < m_tokenLength && !HtmlUtils.isSpace(c = tokenCharAt(i)) && c != HtmlUtils.C_EMPTY)
+			i++;
+		int end = m_tokenLength;
+		while (end > i && HtmlUtils.isSpace(tokenCharAt(end - 1)))
+			end--;
+		if (end > i && tokenCharAt(end - 1) == HtmlUtils.C_EMPTY)
+			return;		// <script ... />
+
+		for (int n = 0; n < RAW_TEXT_END.length; n++)
+		{
+			char[] exit = RAW_TEXT_END[n];
+			if (exit.length - 2 != i - start)
+				continue;
+			int k = 0;
+			while (k < i - start && Character.toLowerCase(tokenCharAt(start + k)) == exit[k + 2])
+				k++;
+			if (k == i - start)
+			{
+				enterCDATAMode(exit, false);
+				m_rawText = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the content of a raw text element up to its end tag, which is
+	 * left unread. An end tag name must be followed by a space, '/' or '&gt;'.
+	 *
+	 * @param	continued  true if the last token was a piece of this one,
+	 *				which is then returned even if it is empty
+	 * @return	true if the content is the current token, false if it is
+	 *			empty or runs to the end of the input, and is left to
+	 *			the rest of nextToken().
+	 */
+	private boolean readRawText(boolean continued)
+		throws IOException
+	{
+		RawTextScanner exit = exitScanner();
+		int len = exit.length();
+		while (true)
+		{
+			// an end tag needs the char after its name to be in the window
+			int at = exit.indexOf(m_window, m_pos, m_limit);
+			while (at >= 0 && at + len < m_limit && !endsTagName(m_window[at + len]))
+				at = exit.indexOf(m_window, at + 1, m_limit);
+			if (at >= 0 && at + len < m_limit && runLimit(at) == at)
+			{
+				countLines(m_pos, at);
+				appendRun(at);
+				m_cdata = -1;
+				m_rawText = false;
+				if (m_tokenLength == 0 && !continued)
+					return false;
+				m_isCDTATA = true;
+				return true;
+			}
+
+			int end = at >= 0 ? at : Math.max(m_pos, m_limit - len);
+			if (takeRawText(end))
+				return true;
+			int unread = m_limit - m_pos;
+			fill();
+			if (m_underflow)
+				return false;		// readToken() carries on here when more is pushed
+			if (m_limit - m_pos == unread)
+			{
+				// no end tag before the end of the input
+				if (takeRawText(m_limit))
+					return true;
+				m_cdata = -1;
+				m_rawText = false;
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Adds raw text up to <i>end</i> to the current token, or as much of
+	 * it as fits.
+	 *
+	 * @return	true if the token is full and is returned as a piece
+	 */
+	private boolean takeRawText(int end)
+	{
+		end = charEnd(end);
+		int limit = runLimit(end);
+		countLines(m_pos, limit);
+		appendRun(limit);
+		m_partial = limit < end;
+		return m_partial;
+	}
+
+	private static boolean endsTagName(char c)
+	{
+		return HtmlUtils.isSpace(c) || c == HtmlUtils.C_EMPTY || c == '>';
+	}
+
+	/**
+	 * @return	true if <i>exit</i> ends an element whose text has entities,
+	 *			i.e. &lt;textarea&gt; or &lt;title&gt;
+	 */
+	private static boolean isEscapableRawText(char[] exit)
+	{
+		return Arrays.equals(exit, TEXTAREA_END) || Arrays.equals(exit, TITLE_END);
+	}
+
+	/**
+	 * Counts the newlines in the window between <i>from</i> and <i>to</i>.
+	 */
+	private void countLines(int from, int to)
+	{
+		char[] window = m_window;
+		for (int i = from; i < to; i++)
+		{
+			if (window[i] == '\n')
+			{
+				m_lineno++;
+				newline(m_base + i);
+			}
+		}
+	}
+
+	/**
+	 * Notes the offset of a newline that has just been counted.
+	 */
+	private void newline(long offset)
+	{
+		if (m_newlineCount == m_newlines.length)
+			m_newlines = Arrays.copyOf(m_newlines, m_newlineCount * 2);
+		m_newlines[m_newlineCount++] = offset;
+	}
+
+	/**
+	 * Forgets the newlines in front of <i>offset</i>, nothing before it
+	 * is asked about any more.
+	 */
+	private void dropNewlines(long offset)
+	{
+		int n = 0;
+		while (n < m_newlineCount && m_newlines[n] < offset)
+			n++;
+		if (n == 0)
+			return;
+		m_firstLine += n;
+		m_firstLineStart = m_newlines[n - 1] + 1;
+		m_newlineCount -= n;
+		System.arraycopy(m_newlines, n, m_newlines, 0, m_newlineCount);
+	}
+
+	/**
+	 * @return	number of newlines noted in front of <i>offset</i>
+	 */
+	private int newlinesBefore(long offset)
+	{
+		int lo = 0, hi = m_newlineCount;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (m_newlines[mid] < offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return	offset where the line of <i>offset</i> starts
+	 */
+	private long lineStart(long offset)
+	{
+		int n = newlinesBefore(offset);
+		return n == 0 ? m_firstLineStart : m_newlines[n - 1] + 1;
+	}
+
+	/**
+	 * @return	offset of the next char of the input the tokenizer will look
+	 *			at, i.e. where the next token starts. Chars that were read
+	 *			ahead and are still to be handled are not counted as read.
+	 */
+	private long nextOffset()
+	{
+		long offset = m_base + m_pos;
+		if (m_pushback > 0)
+			offset--;
+		if (m_cdata < -1)
+			offset -= -m_cdata - 1;		// the exit string is read again
+		else if (m_cdata >= 0)
+			offset -= m_cdata + m_cdata_flush;		// chars held over from a piece
+		if (m_state == STATE_TAG)
+			offset--;		// the text before read the '<'
+		else if (m_state == STATE_BANGTAG)
+			offset -= 2;		// and "<!"
+		else if (m_state == STATE_COMMENT)
+			offset -= Math.min(m_comment, 2);		// dashes held back from a piece
+		return offset;
+	}
+
+	/**
+	 * @return	false if the token being read is of a type that is filtered
+	 *			out, so its characters need not be kept.
+	 */
+	private boolean buffering()
+	{
+		if (!m_filtered)
+			return true;
+		switch (m_state)
+		{
+		case STATE_TEXT:
+			return m_wantText;
+		case STATE_COMMENT:
+			return m_wantComment;
+		case STATE_TAG:
+		case STATE_TAG_QUOTE:
+			return m_wantTag || m_rawTextElements;		// the tag name is looked at
+		default:
+			return true;		// <!-- is told from other bang tags by the buffer
+		}
+	}
+
+	/**
+	 * @return	true if the token just read passes the filters.
+	 */
+	private boolean wanted(int ttype)
+	{
+		switch (ttype)
+		{
+		case TT_TEXT:
+			return m_wantText;
+		case TT_COMMENT:
+			return m_wantComment;
+		case TT_BANGTAG:
+			return m_wantBangTag;
+		case TT_TAG:
+			return m_wantTag && (m_tagNames == null || tagNameWanted());
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Looks at the name of the current tag token the way HtmlTagParser
+	 * finds it, without copying it.
+	 */
+	private boolean tagNameWanted()
+	{
+		int i = 0;
+		while (i < m_tokenLength && HtmlUtils.isSpace(tokenCharAt(i)))
+			i++;
+		if (i < m_tokenLength && tokenCharAt(i) == HtmlUtils.C_ENDTAG)
+			i++;
+		int start = i;
+		char c;
+		while (i < m_tokenLength && !HtmlUtils.isSpace(c = tokenCharAt(i)) && c != HtmlUtils.C_EMPTY)
+			i++;
+		for (int n = 0; n < m_tagNames.length; n++)
+		{
+			String name = m_tagNames[n];
+			if (name.length() != i - start)
+				continue;
+			int k = 0;
+			while (k < name.length() && Character.toUpperCase(tokenCharAt(start + k)) == name.charAt(k))
+				k++;
+			if (k == name.length())
+				return true;
+		}
+		return false;
+	}
+
+	private void clearToken()
+	{
+		m_tokenLength = 0;
+		m_buf.setLength(0);
+		m_sliced = m_inMemory;
+	}
+
+	private void truncateToken(int length)
+	{
+		m_tokenLength = length;
+		if (!m_sliced && buffering())
+			m_buf.setLength(length);
+	}
+
+	private char tokenCharAt(int i)
+	{
+		return m_sliced ? sourceCharAt(m_tokenStart + i) : m_buf.charAt(i);
+	}
+
+	private boolean tokenEquals(String s)
+	{
+		if (s.length() != m_tokenLength)
+			return false;
+		for (int i = 0; i < m_tokenLength; i++)
+			if (tokenCharAt(i) != s.charAt(i))
+				return false;
+		return true;
+	}
+
+	private char sourceCharAt(long offset)
+	{
+		if (m_source != null)
+			return m_source.charAt((int)offset);
+		if (m_bytes != null)
+			return (char)(byteAt(offset) & 0xff);
+		return m_window[(int)(offset - m_base)];
+	}
+
+	/**
+	 * Copies the current token out of the input into m_buf. Bytes are copied
+	 * one to one, they are decoded later by materialize().
+	 */
+	private void copySlice()
+	{
+		int start = (int)m_tokenStart;
+		if (m_source != null)
+			m_buf.append(m_source, start, start + m_tokenLength);
+		else if (m_bytes != null)
+		{
+			for (int i = 0; i < m_tokenLength; i++)
+				m_buf.append((char)(byteAt(m_tokenStart + i) & 0xff));
+		}
+		else
+			m_buf.append(m_window, (int)(m_tokenStart - m_base), m_tokenLength);
+	}
+
+	/**
+	 * Stops treating the current token as a slice of the input, from here on
+	 * its characters are buffered.
+	 */
+	private void unslice()
+	{
+		copySlice();
+		m_sliced = false;
+	}
+
+	/**
+	 * Puts the value of the current token into m_buf: copies a slice out
+	 * of the input, and decodes the token if the input is bytes.
+	 */
+	private void materialize()
+	{
+		if (m_bytes != null)
+		{
+			if (m_sliced)
+				decode(tokenBytes());
+			else
+			{
+				// m_buf holds one byte per char, turn it back into bytes
+				int len = m_buf.length();
+				byte[] raw = new byte[len];
+				char[] chars = m_buf.array();
+				for (int i = 0; i < len; i++)
+					raw[i] = (byte)chars[i];
+				m_buf.setLength(0);
+				decode(ByteBuffer.wrap(raw));
+			}
+		}
+		else if (m_sliced)
+			copySlice();
+		m_materialized = true;
+	}
+
+	private void decode(ByteBuffer in)
+	{
+		if (m_decoder == null)
+		{
+			m_decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		int start = m_buf.length();
+		m_buf.setLength(start + in.remaining());		// UTF-8 never decodes to more chars than bytes
+		CharBuffer out = CharBuffer.wrap(m_buf.array(), start, in.remaining());
+		m_decoder.reset();
+		m_decoder.decode(in, out, true);
+		m_decoder.flush(out);
+		m_buf.setLength(out.position());
+	}
+
+	private byte byteAt(long offset)
+	{
+		return m_bytes[(int)(offset >>> m_segmentShift)].get((int)(offset & ((1L << m_segmentShift) - 1)));
+	}
+
+	/**
+	 * @return	the bytes of the current token, a view of the input unless the
+	 *			token straddles two segments of a mapped file.
+	 */
+	private ByteBuffer tokenBytes()
+	{
+		if (m_tokenLength == 0)
+			return ByteBuffer.allocate(0);
+		long end = m_tokenStart + m_tokenLength;
+		int segment = (int)(m_tokenStart >>> m_segmentShift);
+		if ((end - 1) >>> m_segmentShift != segment)
+		{
+			byte[] copy = new byte[m_tokenLength];
+			for (int i = 0; i < copy.length; i++)
+				copy[i] = byteAt(m_tokenStart + i);
+			return ByteBuffer.wrap(copy);
+		}
+		ByteBuffer bytes = m_bytes[segment].duplicate();
+		int start = (int)(m_tokenStart & ((1L << m_segmentShift) - 1));
+		bytes.limit(start + m_tokenLength);
+		bytes.position(start);
+		return bytes;
+	}
+
+	/**
+	 * @return	next character from the input window, or -1 at end of stream.
+	 */
+	private int read()
+		throws IOException
+	{
+		if (m_pos < m_limit)
+			return m_window[m_pos++];
+		return fill() ? m_window[m_pos++] : -1;
+	}
+
+	/**
+	 * Refills the input window with the next block from the input. Characters
+	 * that have not been consumed yet are moved to the front of the window.
+	 *
+	 * @return	false if there is nothing left to read.
+	 */
+	private boolean fill()
+		throws IOException
+	{
+		if (m_push)
+		{
+			// pushed input is only dropped by pushSpace()
+			m_underflow = !m_endOfInput;
+			return false;
+		}
+		if (m_in == null && m_source == null && m_bytes == null)
+			return m_pos < m_limit;	// a char[] is scanned in place, there is nothing to refill
+
+		int unread = m_limit - m_pos;
+		if (unread > 0)
+			System.arraycopy(m_window, m_pos, m_window, 0, unread);
+		m_base += m_pos;
+		m_pos = 0;
+		m_limit = unread;
+
+		int n;
+		if (m_source != null)
+		{
+			n = Math.min(m_window.length - m_limit, m_source.length() - m_sourcePos);
+			if (m_source instanceof String)
+				((String)m_source).getChars(m_sourcePos, m_sourcePos + n, m_window, m_limit);
+			else
+				for (int i = 0; i < n; i++)
+					m_window[m_limit + i] = m_source.charAt(m_sourcePos + i);
+			m_sourcePos += n;
+		}
+		else if (m_bytes != null)
+		{
+			// widen bytes to chars one to one, decoding is left for later
+			n = (int)Math.min(m_window.length - m_limit, m_byteEnd - m_bytePos);
+			int done = 0;
+			while (done < n)
+			{
+				ByteBuffer segment = m_bytes[(int)(m_bytePos >>> m_segmentShift)];
+				int from = (int)(m_bytePos & ((1L << m_segmentShift) - 1));
+				int count = Math.min(n - done, segment.limit() - from);
+				int to = m_limit + done;
+				if (segment.hasArray())
+				{
+					byte[] bytes = segment.array();
+					from += segment.arrayOffset();
+					for (int i = 0; i < count; i++)
+						m_window[to + i] = (char)(bytes[from + i] & 0xff);
+				}
+				else
+				{
+					for (int i = 0; i < count; i++)
+						m_window[to + i] = (char)(segment.get(from + i) & 0xff);
+				}
+				done += count;
+				m_bytePos += count;
+			}
+		}
+		else
+			n = m_in.read(m_window, m_limit, m_window.length - m_limit);
+		if (n > 0)
+			m_limit += n;
+		return m_pos < m_limit;
+	}
+
+    /**
+     * @return	token type, one of the <b>TT_</b> defines
+     */
+    public final int getTokenType()
+    {
+        return m_ttype;
+    }
+
+    /**
+     * @return	string value of the token
+     * @deprecated	use getTokenValue() instead, this copies the token into
+     *				a StringBuffer.
+     */
+    @Deprecated
+    public final StringBuffer getStringValue()
+    {
+        syncLegacyBuffers();
+        return m_legacyBuf;
+    }
+
+    /**
+     * Returns the value of the token. With setUnescaped(true) the entities
+     * of a text token are unescaped here, on the first call, rather than
+     * when the token is read, so tokens that are never looked at cost
+     * nothing to unescape.
+     *
+     * @return	value of the token. The buffer is reused by the next call
+     *			to nextToken().
+     */
+    public final HtmlCharBuffer getTokenValue()
+    {
+        if (!m_materialized)
+            materialize();
+        if (!m_pendingUnescape)
+            return m_buf;
+        if (!m_unescapedValid)
+        {
+            if (m_unescaped == null)
+                m_unescaped = new HtmlCharBuffer(m_buf.length());
+            m_unescaped.setLength(0);
+            m_unescaped.append(m_buf.array(), 0, m_buf.length());
+            unescape(m_unescaped);
+            m_unescapedValid = true;
+        }
+        return m_unescaped;
+    }
+
+    /**
+     * @return	true if the current token is text with entities that
+     *			getTokenValue() unescapes
+     */
+    public boolean needsUnescaping()
+    {
+        return m_pendingUnescape;
+    }
+
+    /**
+     * Returns the current token without copying it, when the tokenizer was
+     * given a char[] or CharSequence. The slice is the raw text of the token,
+     * it is not unescaped, and is only valid until the next call to nextToken().
+     * For other input the token has to be buffered anyway and this is the
+     * raw value getTokenValue() is unescaped from.
+     *
+     * @return	characters of the current token
+     */
+    public CharSequence getTokenSlice()
+    {
+        if (m_bytes != null && m_sliced)
+            return StandardCharsets.UTF_8.decode(tokenBytes());
+        if (!m_sliced)
+        {
+            if (!m_materialized)
+                materialize();
+            return m_buf;
+        }
+        int start = (int)m_tokenStart;
+        if (m_source != null)
+            return m_source.subSequence(start, start + m_tokenLength);
+        return CharBuffer.wrap(m_window, (int)(m_tokenStart - m_base), m_tokenLength).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the undecoded bytes of the current token, for a tokenizer that
+     * was given bytes. Nothing is copied or decoded. Like getTokenSlice()
+     * this is the raw token, and it is only valid until the next call to
+     * nextToken().
+     *
+     * @return	read-only view of the token's bytes, or null if the input
+     *			is not bytes or the token could not be kept as a slice.
+     */
+    public ByteBuffer getTokenBytes()
+    {
+        if (m_bytes == null || !m_sliced)
+            return null;
+        return tokenBytes().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return	offset in the input of the first character of the token value,
+     *			i.e. of getTokenSlice()
+     */
+    public long getTokenOffset()
+    {
+        return m_tokenStart;
+    }
+
+    /**
+     * @return	number of input characters in the token value, before unescaping
+     */
+    public int getTokenLength()
+    {
+        return m_tokenLength;
+    }
+
+    /**
+     * @return	a copy of the current token that stays valid after nextToken()
+     *			is called again.
+     */
+    public HtmlToken getToken()
+    {
+        return new HtmlToken(m_ttype, getTokenValue().toString(), m_tokenStart, m_tokenLength, m_lineno, m_isCDTATA,
+            m_tokenBegin, getTokenEnd(), getColumnNumber(), m_partial);
+    }
+
+    /**
+     * @return string value of the token, including characters stripped off by the tokenizer
+     */
     public final String getRawString()
     {
         switch (m_ttype)
         {
         case TT_TAG:
-            return "<" + m_buf.toString() + ">";
+            return "<" + getTokenValue().toString() + ">";
         case TT_BANGTAG:
-            return "<!" + m_buf.toString() + ">";
+            return "<!" + getTokenValue().toString() + ">";
         case TT_COMMENT:
-            return "<!--" + m_buf.toString() + "-->";
+            return "<!--" + getTokenValue().toString() + "-->";
         case TT_ENTITYREFERENCE:
-            return "&" + m_buf.toString() + ";";
+            return "&" + getTokenValue().toString() + ";";
         default:
-            return m_buf.toString();
+            return getTokenValue().toString();
         }
     }
 
     @Deprecated
     public final StringBuffer getWhiteSpace()
+    {
+        syncLegacyBuffers();
+        return m_legacyWhitespace;
+    }
+
+    /**
+     * @return	white space in front of the token.
+     */
+    public final HtmlCharBuffer getTokenWhiteSpace()
     {
         return m_whitespace;
     }
 
+    /**
+     * Copies the token into the StringBuffers handed out by the deprecated
+     * accessors, once per token so callers that modify them see their changes.
+     */
+    private void syncLegacyBuffers()
+    {
+        if (m_legacyValid)
+            return;
+        if (m_legacyBuf == null)
+        {
+            m_legacyBuf = new StringBuffer(128);
+            m_legacyWhitespace = new StringBuffer();
+        }
+        HtmlCharBuffer value = getTokenValue();
+        m_legacyBuf.setLength(0);
+        m_legacyBuf.append(value.array(), 0, value.length());
+        m_legacyWhitespace.setLength(0);
+        m_legacyWhitespace.append(m_whitespace.array(), 0, m_whitespace.length());
+        m_legacyValid = true;
+    }
+
     public int getLineNumber()
     {
         return m_lineno;
     }
 
+    /**
+     * @return	offset in the input of the start of the token, markup
+     *			included: the '&lt;' of a tag or comment.
+     */
+    public long getTokenStart()
+    {
+        return m_tokenBegin;
+    }
+
+    /**
+     * @return	offset in the input just past the end of the token, markup
+     *			included, i.e. where the next token starts.
+     */
+    public long getTokenEnd()
+    {
+        return Math.max(m_tokenBegin, nextOffset());
+    }
+
+    /**
+     * @return	line on which the token starts. Unlike getLineNumber() this
+     *			does not depend on how far the tokenizer had to read.
+     */
+    public int getStartLineNumber()
+    {
+        return getLineNumber(m_tokenBegin);
+    }
+
+    /**
+     * @return	column, counted from 1, at which the token starts
+     */
+    public int getColumnNumber()
+    {
+        return getColumnNumber(m_tokenBegin);
+    }
+
+    /**
+     * Maps an input offset to a line. Only the newlines from the start of
+     * the current token on are kept, the offset must not be before
+     * getTokenStart() and not past what has been read.
+     *
+     * @param	offset  offset in the input, in the units of getTokenOffset()
+     * @return	line number of <i>offset</i>
+     */
+    public int getLineNumber(long offset)
+    {
+        checkPosition(offset);
+        return m_firstLine + newlinesBefore(offset);
+    }
+
+    /**
+     * @param	offset  offset in the input, see getLineNumber(long)
+     * @return	column of <i>offset</i>, counted from 1
+     */
+    public int getColumnNumber(long offset)
+    {
+        checkPosition(offset);
+        return (int)(offset - lineStart(offset)) + 1;
+    }
+
+    private void checkPosition(long offset)
+    {
+        if (offset < m_tokenBegin || offset > m_base + m_limit)
+            throw new IllegalArgumentException("offset " + offset + " is outside the current token");
+    }
+
     public void enterCDATAMode(char[] exitString, boolean pushbackExitString)
     {
         m_cdata_end = exitString;
         m_cdata = 0;
+        m_cdata_flush = 0;
         m_cdata_pushback = pushbackExitString;
+        m_rawText = false;
     }
 
     public boolean isCDATA()
@@ -389,9 +2512,29 @@ public class HtmlStreamTokenizer
         return m_isCDTATA;
     }
 
+    /**
+     * @deprecated	use parseTag(CharSequence, HtmlTag) instead.
+     */
+    @Deprecated
     public void parseTag(StringBuffer sbuf, HtmlTag tag) throws HtmlException
     {
-        new HtmlTagParser().parseTag(sbuf, tag, m_unescape);
+        parseTag((CharSequence)sbuf, tag);
+    }
+
+    public void parseTag(CharSequence sbuf, HtmlTag tag) throws HtmlException
+    {
+        TAG_PARSER.parseTag(sbuf, tag, m_unescape);
+    }
+
+    /**
+     * Parses the current TT_TAG token into <i>tag</i>, see setAttributeSpans().
+     */
+    public void parseTag(HtmlTag tag) throws HtmlException
+    {
+        if (m_spansRecorded && m_ttype == TT_TAG)
+            m_tagSpans.fill(getTokenValue(), tag, m_unescape, TAG_PARSER);
+        else
+            TAG_PARSER.parseTag(getTokenValue(), tag, m_unescape);
     }
 
     public static String unescape(String buf)
@@ -399,11 +2542,20 @@ public class HtmlStreamTokenizer
         return HtmlEscaping.unescape(buf);
     }
 
+    /**
+     * @deprecated	use unescape(HtmlCharBuffer) instead.
+     */
+    @Deprecated
     public static void unescape(StringBuffer buf)
     {
         HtmlEscaping.unescape(buf);
     }
 
+    public static void unescape(HtmlCharBuffer buf)
+    {
+        HtmlEscaping.unescape(buf);
+    }
+
     /**
      * end of stream.
      */
@@ -431,5 +2583,10 @@ public class HtmlStreamTokenizer
      */
     public static final int TT_ENTITYREFERENCE = -6;
 
+    /**
+     * nextPushedToken() needs more input to complete the token
+     */
+    static final int TT_NEED_INPUT = -7;
+
 }
 
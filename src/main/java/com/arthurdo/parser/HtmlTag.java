@@ -39,8 +39,8 @@ public class HtmlTag
 		m_tag = new String(orig.m_tag);
 		m_ttype = orig.m_ttype;
 		m_endtag = orig.m_endtag;
-		m_names = (Vector)orig.m_names.clone();
-		m_values = (Vector)orig.m_values.clone();
+		m_params = orig.m_count == 0 ? NO_PARAMS : Arrays.copyOf(orig.m_params, 2 * orig.m_count);
+		m_count = orig.m_count;
 //		m_params = (Hashtable)orig.m_params.clone();
 //		m_originalParamNames = (Hashtable)orig.m_originalParamNames.clone();
 		m_empty = orig.m_empty;
@@ -103,7 +103,7 @@ public class HtmlTag
 	{
 		final int idx = indexOfName(name);
 		if (idx != -1)
-			return (String)m_values.elementAt(idx);
+			return m_params[2 * idx + 1];
 
 		return null;
 	}
@@ -116,7 +116,8 @@ public class HtmlTag
 	 */
 	public String getParamName(int i)
 	{
-		return (String)m_names.elementAt(i);
+		checkIndex(i);
+		return m_params[2 * i];
 	}
 
 	/**
@@ -127,7 +128,20 @@ public class HtmlTag
 	 */
 	public String getParamValue(int i)
 	{
-		return (String)m_values.elementAt(i);
+		checkIndex(i);
+		return m_params[2 * i + 1];
+	}
+
+	/**
+	 * Looks up the position of a tag param, to get at its name and value
+	 * with getParamName() and getParamValue().
+	 *
+	 * @param	name  name of param, in any case
+	 * @return	the index of the first param of that name, or -1.
+	 */
+	public int indexOfParam(String name)
+	{
+		return indexOfName(name);
 	}
 
 	/**
@@ -163,8 +177,11 @@ public class HtmlTag
 	 */
 	public void setParam(String name, String value)
 	{
-		m_names.addElement(name);
-		m_values.addElement(value);
+		if (2 * m_count == m_params.length)
+			m_params = Arrays.copyOf(m_params, Math.max(2 * INITIAL_PARAMS, 2 * m_params.length));
+		m_params[2 * m_count] = name;
+		m_params[2 * m_count + 1] = value;
+		m_count++;
 	}
 
 	public void setWhitespace(String name, String whitespaceBefore, String whitespaceAfter)
@@ -181,25 +198,29 @@ public class HtmlTag
 		final int idx = indexOfName(name);
 		if (idx != -1)
 		{
-			m_names.removeElementAt(idx);
-			m_values.removeElementAt(idx);
+			m_count--;
+			System.arraycopy(m_params, 2 * idx + 2, m_params, 2 * idx, 2 * (m_count - idx));
+			m_params[2 * m_count] = null;
+			m_params[2 * m_count + 1] = null;
 		}
 	}
 
 	/**
-	 * @return	an enumeration of the parameter names.
+	 * @return	an enumeration of the parameter names. Going through them
+	 *			by index with getParamName() does not allocate.
 	 */
 	public Enumeration getParamNames()
 	{
-		return m_names.elements();
+		return new ParamEnumeration(0);
 	}
 
 	/**
-	 * @return	an enumeration of the parameter values.
+	 * @return	an enumeration of the parameter values. Going through them
+	 *			by index with getParamValue() does not allocate.
 	 */
 	public Enumeration getParamValues()
 	{
-		return m_values.elements();
+		return new ParamEnumeration(1);
 	}
 
 	/**
@@ -207,7 +228,7 @@ public class HtmlTag
 	 */
 	public int getParamCount()
 	{
-		return m_names.size();
+		return m_count;
 	}
 
 	/**
@@ -232,12 +253,11 @@ public class HtmlTag
 			tag.append(HtmlUtils.C_ENDTAG);
 		tag.append(getTagString());
 
-		final int size = m_names.size();
-		for (int i=0; i<size; i++)
+		for (int i=0; i<m_count; i++)
 		{
-			String name = (String)m_names.elementAt(i);
+			String name = m_params[2 * i];
 			tag.append(" " + name);
-			String value = (String)m_values.elementAt(i);
+			String value = m_params[2 * i + 1];
 			if (value.length() > 0)
 				tag.append("=\"" + value + "\"");
 		}
@@ -256,12 +276,27 @@ public class HtmlTag
 		m_tag = null;
 		m_ttype = T_UNKNOWN;
 		m_endtag = false;
-		m_names.removeAllElements();
-		m_values.removeAllElements();
+		Arrays.fill(m_params, 0, 2 * m_count, null);		// keeps the array for the next tag
+		m_count = 0;
 		m_empty = false;
 	}
 
 
+	/**
+	 * @return	upper case name of a tag type, or null for an unknown type.
+	 */
+	static String getTagName(int ttype)
+	{
+		for (Enumeration e = m_tags.keys(); e.hasMoreElements(); )
+		{
+			String name = (String)e.nextElement();
+			if (((Integer)m_tags.get(name)).intValue() == ttype)
+				return name;
+		}
+		return null;
+	}
+
+
 	public static final int T_UNKNOWN = 0;
 	public static final int T_A = 1;
 	public static final int T_ABBREV = 2;
@@ -430,19 +465,56 @@ public class HtmlTag
 
 	private final int indexOfName(String name)
 	{
-		final int size = m_names.size();
-		for (int i=0; i<size; i++)
-			if (name.equalsIgnoreCase((String)m_names.elementAt(i)))
+		for (int i=0; i<m_count; i++)
+			if (name.equalsIgnoreCase(m_params[2 * i]))
 				return i;
 
 		return -1;
 	}
 
+	private final void checkIndex(int i)
+	{
+		if (i < 0 || i >= m_count)
+			throw new ArrayIndexOutOfBoundsException(i + " >= " + m_count);
+	}
+
+	/**
+	 * Goes through the names or the values of the params, as they are when
+	 * it gets to them.
+	 */
+	private final class ParamEnumeration implements Enumeration
+	{
+		private int m_next;		// index into m_params
+
+		ParamEnumeration(int first)
+		{
+			m_next = first;
+		}
+
+		public boolean hasMoreElements()
+		{
+			return m_next < 2 * m_count;
+		}
+
+		public Object nextElement()
+		{
+			if (m_next >= 2 * m_count)
+				throw new NoSuchElementException("HtmlTag params");
+			String s = m_params[m_next];
+			m_next += 2;
+			return s;
+		}
+	}
+
 	private String m_tag = null;
 	private int m_ttype = T_UNKNOWN;
 	private boolean m_endtag = false;
-	private Vector m_names = new Vector();
-	private Vector m_values = new Vector();
+	private static final String[] NO_PARAMS = new String[0];
+	private static final int INITIAL_PARAMS = 4;
+	// names at even and values at odd indexes, not synchronized since a
+	// tag is used by one thread at a time
+	private String[] m_params = NO_PARAMS;
+	private int m_count = 0;
 	private static Hashtable m_tags = new Hashtable();
 	private boolean m_empty = false;
 
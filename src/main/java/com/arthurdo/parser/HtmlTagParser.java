@@ -2,7 +2,7 @@ package com.arthurdo.parser;
 
 public class HtmlTagParser {
 
-    void parseTag(String buf, HtmlTag tag, boolean unescape) throws HtmlException
+    void parseTag(CharSequence buf, HtmlTag tag, boolean unescape) throws HtmlException
     {
         tag.reset();
         int cursor = advanceTillNotSpace(buf, 0);
@@ -11,17 +11,17 @@ public class HtmlTagParser {
         complainIfNoMoreChars(buf, cursor);
         int cursor1 = cursor;
         int cursor2 = advanceTillSpaceOrForwardSlash(buf, cursor);
-        tag.setTag(buf.substring(cursor1, cursor2));
+        tag.setTag(buf.subSequence(cursor1, cursor2).toString());
         parseParams(tag, buf, cursor2, unescape);
     }
 
-    private int advanceTillNotSpace(String buf, int idx) {
+    private int advanceTillNotSpace(CharSequence buf, int idx) {
         while (idx < buf.length() && HtmlUtils.isSpace(buf.charAt(idx)))
             idx++;
         return idx;
     }
 
-    private int advanceTillSpaceOrForwardSlash(String buf, int idx) {
+    private int advanceTillSpaceOrForwardSlash(CharSequence buf, int idx) {
         while (idx < buf.length() && !HtmlUtils.isSpace(buf.charAt(idx)) && buf.charAt(idx) != HtmlUtils.C_EMPTY)
             idx++;
         return idx;
@@ -39,7 +39,7 @@ public class HtmlTagParser {
         return false;
     }
 
-    private int advanceIfForwardSlashInWhichCaseMarkAsEndTag(String buf, HtmlTag tag, int idx) {
+    private int advanceIfForwardSlashInWhichCaseMarkAsEndTag(CharSequence buf, HtmlTag tag, int idx) {
         if (buf.charAt(idx) == HtmlUtils.C_ENDTAG)
         {
             tag.setEndTag(true);
@@ -48,17 +48,18 @@ public class HtmlTagParser {
         return idx;
     }
 
-    private void complainIfNoMoreChars(String buf, int idx) throws HtmlException {
+    private void complainIfNoMoreChars(CharSequence buf, int idx) throws HtmlException {
         if (idx == buf.length())
             throw new HtmlException("parse empty tag");
     }
 
-    private void parseParams(HtmlTag tag, String buf, int idx, boolean unescape)
-        throws HtmlException
+    /**
+     * @return  where the attributes that start at <i>idx</i> end, in front of
+     *          the trailing whitespace and the '/' of an empty tag
+     */
+    static int paramsEnd(CharSequence buf, int idx)
     {
         int len = buf.length();
-        int begin = 0;
-
         if (len-1 >= idx)
         {
             int end = len - 1;
@@ -66,12 +67,20 @@ public class HtmlTagParser {
                 end--;
             //todo: tag.setWhitespaceAtEnd(buf.substring(end, len-1) );
             if (buf.charAt(end) == HtmlUtils.C_EMPTY)
-            {
-                tag.setEmpty(true);
                 end--;
-            }
             len = end + 1;
         }
+        return len;
+    }
+
+    void parseParams(HtmlTag tag, CharSequence buf, int idx, boolean unescape)
+        throws HtmlException
+    {
+        int len = paramsEnd(buf, idx);
+        int begin = 0;
+
+        if (len < buf.length() && buf.charAt(len) == HtmlUtils.C_EMPTY)
+            tag.setEmpty(true);
 
         while (idx < len)
         {
@@ -82,7 +91,7 @@ public class HtmlTagParser {
             if (idx == len)//at end
                 continue;
 
-            String whitespaceBefore = buf.substring(begin, idx);
+            String whitespaceBefore = buf.subSequence(begin, idx).toString();
 
             begin = idx;
             if (buf.charAt(idx) == HtmlUtils.C_DOUBLEQUOTE) //how often are attribute names quoted??
@@ -110,7 +119,7 @@ public class HtmlTagParser {
                     idx++;
             }
 
-            String name = buf.substring(begin, idx);
+            String name = buf.subSequence(begin, idx).toString();
 
             begin = idx;
             if (idx < len && HtmlUtils.isSpace(buf.charAt(idx)))//skip whitespace after attribute name
@@ -143,14 +152,14 @@ public class HtmlTagParser {
                 {
                     // name with empty value
                     tag.setParam(name, name); //set the attribute name as the value (SGML tag minimalization rule)
-                    tag.setWhitespace(name, whitespaceBefore, buf.substring(begin, idx));
+                    tag.setWhitespace(name, whitespaceBefore, buf.subSequence(begin, idx).toString());
                     continue;
                 }
             }
 
             char quote = buf.charAt(idx);
             int includeQuote = (quote == HtmlUtils.C_DOUBLEQUOTE || quote == HtmlUtils.C_SINGLEQUOTE) ? 1 : 0;
-            String whitespaceAfter = buf.substring(begin, idx + includeQuote);
+            String whitespaceAfter = buf.subSequence(begin, idx + includeQuote).toString();
 
             begin = idx;
             int end = begin;
@@ -183,7 +192,7 @@ public class HtmlTagParser {
                 end = idx;
             }
 
-            String value = buf.substring(begin, end);
+            String value = buf.subSequence(begin, end).toString();
 
             if (unescape)
                 value = HtmlEscaping.unescape(value);
@@ -0,0 +1,165 @@
+package com.arthurdo.parser;
+
+/**
+ * An immutable copy of a token returned by HtmlStreamTokenizer, for
+ * consumers that keep tokens around after the tokenizer has moved on.
+ *
+ * @see     com.arthurdo.parser.HtmlStreamTokenizer#getToken()
+ */
+public final class HtmlToken
+{
+    private final int m_ttype;
+    private final String m_value;
+    private final long m_offset;
+    private final int m_length;
+    private final int m_lineno;
+    private final boolean m_cdata;
+    private final long m_start;
+    private final long m_end;
+    private final int m_column;
+    private final boolean m_partial;
+
+    /**
+     * @param	ttype  token type, one of the HtmlStreamTokenizer <b>TT_</b> defines
+     * @param	value  value of the token
+     * @param	offset  offset of the token value in the input
+     * @param	length  length of the token value in the input
+     * @param	lineno  line number after the token was read
+     * @param	cdata  whether the token ended a CDATA section
+     */
+    public HtmlToken(int ttype, String value, long offset, int length, int lineno, boolean cdata)
+    {
+        this(ttype, value, offset, length, lineno, cdata, offset, offset + length, 0, false);
+    }
+
+    /**
+     * @param	start  offset of the token in the input, markup included
+     * @param	end  offset just past the token in the input
+     * @param	column  column at which the token starts, 0 if not known
+     * @param	partial  whether the next token carries on with this one
+     */
+    public HtmlToken(int ttype, String value, long offset, int length, int lineno, boolean cdata,
+                     long start, long end, int column, boolean partial)
+    {
+        m_ttype = ttype;
+        m_value = value;
+        m_offset = offset;
+        m_length = length;
+        m_lineno = lineno;
+        m_cdata = cdata;
+        m_start = start;
+        m_end = end;
+        m_column = column;
+        m_partial = partial;
+    }
+
+    /**
+     * @return	token type, one of the HtmlStreamTokenizer <b>TT_</b> defines
+     */
+    public int getTokenType()
+    {
+        return m_ttype;
+    }
+
+    /**
+     * @return	value of the token, as HtmlStreamTokenizer.getTokenValue()
+     */
+    public String getValue()
+    {
+        return m_value;
+    }
+
+    /**
+     * @return	offset of the token value in the input, as
+     *			HtmlStreamTokenizer.getTokenOffset()
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
+    /**
+     * @return	number of input characters in the token value
+     */
+    public int getLength()
+    {
+        return m_length;
+    }
+
+    /**
+     * @return	line number after the token was read, as
+     *			HtmlStreamTokenizer.getLineNumber()
+     */
+    public int getLineNumber()
+    {
+        return m_lineno;
+    }
+
+    public boolean isCDATA()
+    {
+        return m_cdata;
+    }
+
+    /**
+     * @return	offset of the token in the input, markup included, as
+     *			HtmlStreamTokenizer.getTokenStart()
+     */
+    public long getStart()
+    {
+        return m_start;
+    }
+
+    /**
+     * @return	offset just past the token, as HtmlStreamTokenizer.getTokenEnd()
+     */
+    public long getEnd()
+    {
+        return m_end;
+    }
+
+    /**
+     * @return	column at which the token starts, as
+     *			HtmlStreamTokenizer.getColumnNumber()
+     */
+    public int getColumnNumber()
+    {
+        return m_column;
+    }
+
+    /**
+     * @return	true if the token is a piece of a longer text or comment, as
+     *			HtmlStreamTokenizer.isPartial()
+     */
+    public boolean isPartial()
+    {
+        return m_partial;
+    }
+
+    /**
+     * @return	a copy of this token with a different line and column number.
+     */
+    HtmlToken withPosition(int lineno, int column)
+    {
+        return new HtmlToken(m_ttype, m_value, m_offset, m_length, lineno, m_cdata, m_start, m_end, column, m_partial);
+    }
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof HtmlToken))
+            return false;
+        HtmlToken t = (HtmlToken)o;
+        return m_ttype == t.m_ttype && m_offset == t.m_offset && m_length == t.m_length
+            && m_lineno == t.m_lineno && m_cdata == t.m_cdata && m_value.equals(t.m_value)
+            && m_start == t.m_start && m_end == t.m_end && m_column == t.m_column && m_partial == t.m_partial;
+    }
+
+    public int hashCode()
+    {
+        return (int)m_offset * 31 + m_ttype;
+    }
+
+    public String toString()
+    {
+        return m_ttype + "@" + m_offset + ":" + m_value;
+    }
+}
@@ -0,0 +1,21 @@
+package com.arthurdo.parser;
+
+import java.io.IOException;
+
+/**
+ * Receives the tokens of an HtmlPushTokenizer as they are completed.
+ *
+ * @see     com.arthurdo.parser.HtmlPushTokenizer#drain(HtmlTokenHandler)
+ */
+public interface HtmlTokenHandler
+{
+	/**
+	 * Called once per token. The token is read through the accessors of
+	 * <i>tok</i>, which may also be used to enterCDATAMode() for the
+	 * tokens that follow. The token is only valid during the call.
+	 *
+	 * @param	tok  the tokenizer, positioned on the token
+	 */
+	void token(HtmlStreamTokenizer tok)
+		throws IOException;
+}
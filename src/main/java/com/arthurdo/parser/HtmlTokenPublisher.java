@@ -0,0 +1,217 @@
+package com.arthurdo.parser;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the tokens of an HtmlStreamTokenizer to a Flow.Subscriber.
+ * Tokens are read only when the subscriber has asked for them with
+ * request(), so a slow subscriber holds back the reading of the input
+ * rather than letting tokens pile up. Tokens are read and delivered on
+ * the executor, one at a time. Reading the input blocks, e.g. on a socket,
+ * so the executor should not be one that expects its tasks never to block,
+ * such as the common ForkJoinPool.
+ * <p>
+ * A tokenizer can only be read once, so there can only be one subscriber.
+ */
+public class HtmlTokenPublisher implements Flow.Publisher<HtmlToken>
+{
+	private final HtmlStreamTokenizer m_tok;
+	private final Executor m_executor;
+	private final AtomicBoolean m_subscribed = new AtomicBoolean(false);
+
+	/**
+	 * seconds the thread of the default executor waits for more demand
+	 * before it ends
+	 */
+	private static final long KEEP_ALIVE = 10;
+
+	/**
+	 * Delivers tokens on a thread of the publisher's own, started when
+	 * there is demand and ended when there has been none for a while.
+	 */
+	public HtmlTokenPublisher(HtmlStreamTokenizer tok)
+	{
+		this(tok, newExecutor());
+	}
+
+	/**
+	 * @param	tok  the tokenizer to read tokens from
+	 * @param	executor  runs the reading and the calls to the subscriber
+	 */
+	public HtmlTokenPublisher(HtmlStreamTokenizer tok, Executor executor)
+	{
+		m_tok = tok;
+		m_executor = executor;
+	}
+
+	public void subscribe(Flow.Subscriber<? super HtmlToken> subscriber)
+	{
+		if (subscriber == null)
+			throw new NullPointerException("subscriber");
+		if (!m_subscribed.compareAndSet(false, true))
+		{
+			subscriber.onSubscribe(new TokenSubscription(null));
+			subscriber.onError(new IllegalStateException("the tokens have already been subscribed to"));
+			return;
+		}
+		TokenSubscription subscription = new TokenSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * @return	an executor with at most one thread, a daemon, which is
+	 *			enough since a subscription is only run on one thread at
+	 *			a time
+	 */
+	private static Executor newExecutor()
+	{
+		return new ThreadPoolExecutor(0, 1, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "html-token-publisher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+	private final class TokenSubscription implements Flow.Subscription, Runnable
+	{
+		private final Flow.Subscriber<? super HtmlToken> m_subscriber;
+		private final AtomicLong m_demand = new AtomicLong();
+		private final AtomicInteger m_wip = new AtomicInteger();
+		private volatile boolean m_cancelled = false;
+		private volatile Throwable m_badRequest = null;
+
+		TokenSubscription(Flow.Subscriber<? super HtmlToken> subscriber)
+		{
+			m_subscriber = subscriber;
+			m_cancelled = subscriber == null;
+		}
+
+		public void request(long n)
+		{
+			if (m_cancelled)
+				return;
+			if (n <= 0)
+				m_badRequest = new IllegalArgumentException("non-positive request: " + n);
+			else
+			{
+				long demand;
+				do
+				{
+					demand = m_demand.get();
+				}
+				while (!m_demand.compareAndSet(demand, demand + n < 0 ? Long.MAX_VALUE : demand + n));
+			}
+			if (m_wip.getAndIncrement() == 0)
+				m_executor.execute(this);
+		}
+
+		public void cancel()
+		{
+			m_cancelled = true;
+		}
+
+		/**
+		 * Reads and delivers tokens while there is demand. Only one thread
+		 * runs this at a time, requests made meanwhile make it go round again.
+		 */
+		public void run()
+		{
+			int missed = 1;
+			boolean returned = false;
+			try
+			{
+				do
+				{
+					deliver();
+					missed = m_wip.addAndGet(-missed);
+				}
+				while (missed != 0);
+				returned = true;
+			}
+			finally
+			{
+				if (!returned)
+				{
+					// the subscriber threw from onError() or onComplete(),
+					// which it must not (rule 2.13): the subscription is
+					// cancelled, and what it threw goes on to the executor
+					m_cancelled = true;
+					m_wip.set(0);
+				}
+			}
+		}
+
+		private void deliver()
+		{
+			while (!m_cancelled)
+			{
+				if (m_badRequest != null)
+					fail(m_badRequest);
+				else if (m_demand.get() == 0)
+					break;
+				else
+				{
+					int ttype;
+					try
+					{
+						ttype = m_tok.nextToken();
+					}
+					catch (IOException e)
+					{
+						fail(e);
+						break;
+					}
+					catch (RuntimeException e)
+					{
+						fail(e);
+						break;
+					}
+					if (ttype == HtmlStreamTokenizer.TT_EOF)
+					{
+						m_cancelled = true;
+						m_subscriber.onComplete();
+					}
+					else
+					{
+						m_demand.decrementAndGet();
+						try
+						{
+							m_subscriber.onNext(m_tok.getToken());
+						}
+						catch (VirtualMachineError e)
+						{
+							m_cancelled = true;
+							throw e;
+						}
+						catch (Throwable t)
+						{
+							// onNext() must not throw (rule 2.13), the
+							// subscription is cancelled and the subscriber told
+							fail(t);
+						}
+					}
+				}
+			}
+		}
+
+		private void fail(Throwable failure)
+		{
+			m_cancelled = true;
+			m_subscriber.onError(failure);
+		}
+	}
+}
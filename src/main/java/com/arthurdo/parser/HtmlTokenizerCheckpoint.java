@@ -0,0 +1,86 @@
+package com.arthurdo.parser;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The state HtmlStreamTokenizer carries from one token to the next, taken
+ * between two calls to nextToken(). A long job can save checkpoints as it
+ * goes and, after a restart, resume from the last one instead of from the
+ * start of the input.
+ *
+ * @see     com.arthurdo.parser.HtmlStreamTokenizer#checkpoint()
+ */
+public final class HtmlTokenizerCheckpoint implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    final int m_state;
+    final int m_pushback;
+    final int m_lineno;
+    final int m_comment;
+    final int m_tagquote;
+    final char[] m_cdata_end;
+    final int m_cdata;
+    final char[] m_cdata_held;		// the chars held back in front of and in a possible exit string
+    final int m_cdata_flush;		// how many of them are in front of it
+    final boolean m_cdata_pushback;
+    final boolean m_rawText;
+    final boolean m_continued;		// the last token was a piece of a longer one
+    final long m_offset;
+    final int m_line;		// line the next token starts on
+    final long m_lineStart;		// and the offset where that line starts
+
+    HtmlTokenizerCheckpoint(int state, int pushback, int lineno, int comment, int tagquote,
+                            char[] cdata_end, int cdata, char[] cdata_held, int cdata_flush, boolean cdata_pushback,
+                            boolean rawText, boolean continued, long offset, int line, long lineStart)
+    {
+        m_state = state;
+        m_pushback = pushback;
+        m_lineno = lineno;
+        m_comment = comment;
+        m_tagquote = tagquote;
+        m_cdata_end = cdata_end;
+        m_cdata = cdata;
+        m_cdata_held = cdata_held;
+        m_cdata_flush = cdata_flush;
+        m_cdata_pushback = cdata_pushback;
+        m_rawText = rawText;
+        m_continued = continued;
+        m_offset = offset;
+        m_line = line;
+        m_lineStart = lineStart;
+    }
+
+    /**
+     * @return	offset in the input of the next character to read, in the
+     *			units of HtmlStreamTokenizer.getTokenOffset()
+     */
+    public long getOffset()
+    {
+        return m_offset;
+    }
+
+    /**
+     * @return	line number at the checkpoint
+     */
+    public int getLineNumber()
+    {
+        return m_lineno;
+    }
+
+    /**
+     * Two tokenizers in the same state at the same input offset produce the
+     * same tokens from there on, whatever line and column they think they
+     * are on.
+     *
+     * @return	true if the checkpoints are the same apart from the line number.
+     */
+    boolean sameState(HtmlTokenizerCheckpoint cp)
+    {
+        return m_state == cp.m_state && m_pushback == cp.m_pushback && m_comment == cp.m_comment
+            && m_tagquote == cp.m_tagquote && m_cdata == cp.m_cdata && m_cdata_flush == cp.m_cdata_flush
+            && Arrays.equals(m_cdata_held, cp.m_cdata_held) && m_cdata_pushback == cp.m_cdata_pushback
+            && m_rawText == cp.m_rawText && m_continued == cp.m_continued && m_offset == cp.m_offset && Arrays.equals(m_cdata_end, cp.m_cdata_end);
+    }
+}
@@ -13,6 +13,7 @@ public class HtmlUtils {
     private static final byte CT_ALPHA = 4;
     private static final byte CT_QUOTE = 8;
     private static final byte CT_COMMENT = 16;
+    private static final byte CT_TEXT_END = 32;
     
     
     static
@@ -28,6 +29,10 @@ public class HtmlUtils {
         for (int i = 0x0E; i <= 0x1F; i++)
             m_ctype[i] = CT_WHITESPACE;
 
+        // characters that end a plain run of text
+        m_ctype['<'] |= CT_TEXT_END;
+        m_ctype['&'] |= CT_TEXT_END;
+        m_ctype['\n'] |= CT_TEXT_END;
     }
 
     static boolean isSpace(int c)
@@ -35,6 +40,40 @@ public class HtmlUtils {
          return c >=0 && c < CTYPE_LEN ? (m_ctype[c] & CT_WHITESPACE) != 0: false;
     }
 
+    /**
+     * Finds the end of a plain run of text, i.e. the next '<', '&' or '\n'.
+     * The loop is unrolled so that several characters are tested per
+     * iteration.
+     *
+     * @return	index of the first such character, or <i>limit</i>
+     */
+    static int scanText(char[] buf, int pos, int limit)
+    {
+        byte[] ctype = m_ctype;
+        int limit4 = limit - 3;
+        while (pos < limit4)
+        {
+            char c0 = buf[pos], c1 = buf[pos + 1], c2 = buf[pos + 2], c3 = buf[pos + 3];
+            if (c0 < CTYPE_LEN && (ctype[c0] & CT_TEXT_END) != 0)
+                return pos;
+            if (c1 < CTYPE_LEN && (ctype[c1] & CT_TEXT_END) != 0)
+                return pos + 1;
+            if (c2 < CTYPE_LEN && (ctype[c2] & CT_TEXT_END) != 0)
+                return pos + 2;
+            if (c3 < CTYPE_LEN && (ctype[c3] & CT_TEXT_END) != 0)
+                return pos + 3;
+            pos += 4;
+        }
+        while (pos < limit)
+        {
+            char c = buf[pos];
+            if (c < CTYPE_LEN && (ctype[c] & CT_TEXT_END) != 0)
+                return pos;
+            pos++;
+        }
+        return pos;
+    }
+
     static boolean isPunct(char c)
     {
         return !Character.isLetterOrDigit(c);
@@ -0,0 +1,117 @@
+package com.arthurdo.parser;
+
+import java.util.Arrays;
+
+/**
+ * Finds the exit string of raw text, such as "&lt;/script&gt;", for
+ * HtmlStreamTokenizer.enterCDATAMode(). The exit string is matched
+ * regardless of case. Both cases of every char of the exit string are
+ * worked out once, and the text is searched Horspool style: the window
+ * is compared from its last char back, and on a mismatch is moved on by
+ * as much as the char under its last position allows, so most chars of
+ * a long script are never compared with the exit string.
+ */
+final class RawTextScanner
+{
+	private static final int SHIFT_MASK = 0xff;
+
+	private final char[] m_exit;
+	private final char[] m_upper;
+	private final char[] m_lower;
+	private final int[] m_shift = new int[SHIFT_MASK + 1];
+
+	/**
+	 * @param	exit  the exit string, at least one char
+	 */
+	RawTextScanner(char[] exit)
+	{
+		int len = exit.length;
+		m_exit = exit;
+		m_upper = new char[len];
+		m_lower = new char[len];
+		for (int i = 0; i < len; i++)
+		{
+			m_upper[i] = Character.toUpperCase(exit[i]);
+			m_lower[i] = Character.toLowerCase(exit[i]);
+		}
+
+		// chars are hashed into the table, so chars that share a slot
+		// get the smallest shift of any of them
+		Arrays.fill(m_shift, len);
+		for (int i = 0; i < len - 1; i++)
+		{
+			m_shift[m_upper[i] & SHIFT_MASK] = len - 1 - i;
+			m_shift[m_lower[i] & SHIFT_MASK] = len - 1 - i;
+		}
+	}
+
+	/**
+	 * @return	true if this scans for <i>exit</i>, the very same array
+	 */
+	boolean scansFor(char[] exit)
+	{
+		return m_exit == exit;
+	}
+
+	int length()
+	{
+		return m_exit.length;
+	}
+
+	/**
+	 * @return	true if <i>c</i> matches the exit string char at <i>i</i>
+	 */
+	boolean matches(int i, int c)
+	{
+		return c == m_upper[i] || c == m_lower[i];
+	}
+
+	/**
+	 * Finds the first exit string in <i>buf</i> between <i>pos</i> and
+	 * <i>limit</i>.
+	 *
+	 * @return	index of the exit string, or -1 if there is none
+	 */
+	int indexOf(char[] buf, int pos, int limit)
+	{
+		int last = m_exit.length - 1;
+		char[] upper = m_upper;
+		char[] lower = m_lower;
+		int[] shift = m_shift;
+		while (pos + last < limit)
+		{
+			int i = last;
+			char c;
+			while ((c = buf[pos + i]) == upper[i] || c == lower[i])
+			{
+				if (i-- == 0)
+					return pos;
+			}
+			pos += shift[buf[pos + last] & SHIFT_MASK];
+		}
+		return -1;
+	}
+
+	/**
+	 * Works out how much of a failed partial match may still be the start
+	 * of the exit string.
+	 *
+	 * @param	seen  the chars matched so far, followed by the char that
+	 *				did not match
+	 * @param	count  number of chars in <i>seen</i>
+	 * @return	length of the longest proper suffix of <i>seen</i> that
+	 *			starts the exit string
+	 */
+	int overlap(char[] seen, int count)
+	{
+		for (int start = 1; start < count; start++)
+		{
+			int i = 0;
+			while (start + i < count && matches(i, seen[start + i]))
+				i++;
+			if (start + i == count)
+				return i;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,72 @@
+package com.arthurdo.parser;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue between exactly one producer thread and one consumer
+ * thread, without locks. The producer only ever writes m_tail and the
+ * consumer only ever writes m_head; each side keeps the last value it saw
+ * of the other side's counter, so it only reads the shared one when the
+ * queue looks full or empty. Waiting is left to the caller, see
+ * HtmlPipelinedParser.
+ */
+final class SpscQueue<T>
+{
+	private final Object[] m_items;
+	private final int m_mask;
+	private final AtomicLong m_head = new AtomicLong();		// next item to take
+	private final AtomicLong m_tail = new AtomicLong();		// next slot to put to
+	private long m_headSeen = 0;		// by the producer
+	private long m_tailSeen = 0;		// by the consumer
+
+	/**
+	 * @param	capacity  most items in the queue, rounded up to a power of 2
+	 */
+	SpscQueue(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		m_items = new Object[size];
+		m_mask = size - 1;
+	}
+
+	/**
+	 * Called by the producer only.
+	 *
+	 * @return	false if the queue is full
+	 */
+	boolean offer(T item)
+	{
+		long tail = m_tail.get();
+		if (tail - m_headSeen == m_items.length)
+		{
+			m_headSeen = m_head.get();
+			if (tail - m_headSeen == m_items.length)
+				return false;
+		}
+		m_items[(int)tail & m_mask] = item;
+		m_tail.lazySet(tail + 1);		// publishes the item
+		return true;
+	}
+
+	/**
+	 * Called by the consumer only.
+	 *
+	 * @return	the next item, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	T poll()
+	{
+		long head = m_head.get();
+		if (head == m_tailSeen)
+		{
+			m_tailSeen = m_tail.get();
+			if (head == m_tailSeen)
+				return null;
+		}
+		int i = (int)head & m_mask;
+		T item = (T)m_items[i];
+		m_items[i] = null;
+		m_head.lazySet(head + 1);		// hands the slot back
+		return item;
+	}
+}
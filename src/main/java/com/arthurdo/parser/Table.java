@@ -84,6 +84,8 @@ public class Table
 		throws HtmlException, IOException
 	{
 		HtmlStreamTokenizer tok = new HtmlStreamTokenizer(in);
+		tok.setRawTextElements(true);		// no tables out of script bodies
+		tok.setAttributeSpans(true);
 		HtmlTag tag = new HtmlTag();
 
 		while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF)
@@ -91,7 +93,7 @@ public class Table
 			int ttype = tok.getTokenType();
 			if (ttype == HtmlStreamTokenizer.TT_TAG)
 			{
-				tok.parseTag(tok.getStringValue(), tag);
+				tok.parseTag(tag);
 				if (tag.getTagType() == HtmlTag.T_TABLE && !tag.isEndTag())
 					parseTable(tok, new HtmlTag(tag));
 			}
@@ -463,8 +465,8 @@ public class Table
 		else
 		{
 			m_tokenType = m_tok.nextToken();
-			m_stringValue = m_tok.getStringValue();
-			m_whiteSpace = m_tok.getWhiteSpace();
+			m_stringValue = m_tok.getTokenValue();
+			m_whiteSpace = m_tok.getTokenWhiteSpace();
 		}
 
 		return m_tokenType;
@@ -477,8 +479,8 @@ public class Table
 			throw new IOException("only one token pushback supported");
 
 		m_tokenType = m_tok.getTokenType();
-		m_stringValue = m_tok.getStringValue();
-		m_whiteSpace = m_tok.getWhiteSpace();
+		m_stringValue = m_tok.getTokenValue();
+		m_whiteSpace = m_tok.getTokenWhiteSpace();
 		m_pushback = true;
 	}
 
@@ -487,12 +489,12 @@ public class Table
 		return m_tokenType;
 	}
 
-	private StringBuffer getStringValue()
+	private HtmlCharBuffer getStringValue()
 	{
 		return m_stringValue;
 	}
 
-	private StringBuffer getWhiteSpace()
+	private HtmlCharBuffer getWhiteSpace()
 	{
 		return m_whiteSpace;
 	}
@@ -500,8 +502,8 @@ public class Table
 	private HtmlStreamTokenizer m_tok = null;
 	private boolean m_pushback = false;
 	private int m_tokenType = 0;
-	private StringBuffer m_stringValue = null;
-	private StringBuffer m_whiteSpace = null;
+	private HtmlCharBuffer m_stringValue = null;
+	private HtmlCharBuffer m_whiteSpace = null;
 	private TableCell m_cell = null;
 	private Vector m_row = null;
 	private Vector m_rows = new Vector();
@@ -0,0 +1,259 @@
+package com.arthurdo.parser;
+
+import java.util.Arrays;
+
+/**
+ * Records where the name and the attributes of a tag are while
+ * HtmlStreamTokenizer scans the tag for its '&gt;', so an HtmlTag can be
+ * filled from the recorded offsets instead of parsing the tag a second
+ * time, see HtmlStreamTokenizer.setAttributeSpans(). The tag is taken
+ * apart the way HtmlTagParser does it. Only the end of a tag, where a
+ * trailing '/' and whitespace are dropped, depends on where the tag ends;
+ * what is not certain to be parsed the same way then is parsed again by
+ * HtmlTagParser when the tag is filled in.
+ */
+final class TagSpans
+{
+	private static final int LEAD = 0;			// spaces in front of the name
+	private static final int NAME_START = 1;	// after the '/' of an end tag
+	private static final int NAME = 2;
+	private static final int BEFORE = 3;		// spaces in front of an attribute
+	private static final int ATTR_NAME = 4;
+	private static final int QUOTED_NAME = 5;
+	private static final int AFTER_NAME = 6;	// spaces after an attribute name
+	private static final int AFTER_EQUALS = 7;
+	private static final int VALUE = 8;
+	private static final int QUOTED_VALUE = 9;
+
+	/**
+	 * ints per attribute in m_spans: where the spaces in front of it
+	 * start, where its name starts and ends, and where its value starts,
+	 * -1 for an attribute without a value, and ends.
+	 */
+	private static final int SPAN = 5;
+
+	private int[] m_spans = new int[8 * SPAN];
+	private int m_count = 0;		// attributes in m_spans
+	private int m_length = 0;		// chars seen
+	private int m_state = LEAD;
+	private char m_quote;
+	private boolean m_endTag;
+	private int m_nameStart;
+	private int m_nameEnd;
+	private int m_attrStart;		// of the attribute being read, also where the last one stopped
+	private int m_attrNameStart;
+	private int m_attrNameEnd;
+	private int m_valueStart;
+
+	void clear()
+	{
+		m_count = 0;
+		m_length = 0;
+		m_state = LEAD;
+		m_endTag = false;
+	}
+
+	/**
+	 * Takes the next char of the tag.
+	 */
+	void add(char c)
+	{
+		int i = m_length++;
+		boolean space = HtmlUtils.isSpace(c);
+		switch (m_state)
+		{
+		case LEAD:
+			if (space)
+				return;
+			if (c == HtmlUtils.C_ENDTAG)
+			{
+				m_endTag = true;
+				m_state = NAME_START;
+				return;
+			}
+			m_nameStart = i;
+			m_state = NAME;
+			return;
+
+		case NAME_START:
+			m_nameStart = i;
+			if (space || c == HtmlUtils.C_EMPTY)
+				startAttributes(c, i);
+			else
+				m_state = NAME;
+			return;
+
+		case NAME:
+			if (space || c == HtmlUtils.C_EMPTY)
+				startAttributes(c, i);
+			return;
+
+		case BEFORE:
+			before(c, i, space);
+			return;
+
+		case ATTR_NAME:
+			if (space)
+			{
+				m_attrNameEnd = i;
+				m_state = AFTER_NAME;
+			}
+			else if (c == '=')
+			{
+				m_attrNameEnd = i;
+				m_state = AFTER_EQUALS;
+			}
+			return;
+
+		case QUOTED_NAME:
+			if (c == m_quote)
+			{
+				m_attrNameEnd = i + 1;
+				m_state = AFTER_NAME;
+			}
+			return;
+
+		case AFTER_NAME:
+			if (space)
+				return;
+			if (c == '=')
+			{
+				m_state = AFTER_EQUALS;
+				return;
+			}
+			// the name is all there is, c starts the next attribute
+			m_valueStart = -1;
+			endAttribute(i, i);
+			before(c, i, false);
+			return;
+
+		case AFTER_EQUALS:
+			if (space)
+				return;
+			if (c == HtmlUtils.C_DOUBLEQUOTE || c == HtmlUtils.C_SINGLEQUOTE)
+			{
+				m_quote = c;
+				m_valueStart = i + 1;
+				m_state = QUOTED_VALUE;
+			}
+			else
+			{
+				m_valueStart = i;
+				m_state = VALUE;
+			}
+			return;
+
+		case VALUE:
+			if (space)
+			{
+				endAttribute(i, i);
+				m_state = BEFORE;
+			}
+			return;
+
+		case QUOTED_VALUE:
+			if (c == m_quote)
+			{
+				endAttribute(i, i + 1);
+				m_state = BEFORE;
+			}
+			return;
+		}
+	}
+
+	private void startAttributes(char c, int i)
+	{
+		m_nameEnd = i;
+		m_attrStart = i;
+		m_state = BEFORE;
+		before(c, i, HtmlUtils.isSpace(c));
+	}
+
+	private void before(char c, int i, boolean space)
+	{
+		if (space)
+			return;
+		m_attrNameStart = i;
+		if (c == HtmlUtils.C_DOUBLEQUOTE || c == HtmlUtils.C_SINGLEQUOTE)
+		{
+			m_quote = c;
+			m_state = QUOTED_NAME;
+		}
+		else if (c == '=')
+		{
+			m_attrNameEnd = i;
+			m_state = AFTER_EQUALS;
+		}
+		else
+			m_state = ATTR_NAME;
+	}
+
+	/**
+	 * @param	valueEnd  where the value ends
+	 * @param	next  where the next attribute starts
+	 */
+	private void endAttribute(int valueEnd, int next)
+	{
+		if (m_spans.length < (m_count + 1) * SPAN)
+			m_spans = Arrays.copyOf(m_spans, m_spans.length * 2);
+		int k = m_count++ * SPAN;
+		m_spans[k] = m_attrStart;
+		m_spans[k + 1] = m_attrNameStart;
+		m_spans[k + 2] = m_attrNameEnd;
+		m_spans[k + 3] = m_valueStart;
+		m_spans[k + 4] = valueEnd;
+		m_attrStart = next;
+	}
+
+	/**
+	 * Fills <i>tag</i> in from the recorded offsets, like
+	 * HtmlTagParser.parseTag().
+	 *
+	 * @param	buf  the chars that were added, the tag without its &lt; and &gt;
+	 */
+	void fill(CharSequence buf, HtmlTag tag, boolean unescape, HtmlTagParser parser)
+		throws HtmlException
+	{
+		tag.reset();
+		if (m_state == LEAD || m_state == NAME_START)
+			throw new HtmlException("parse empty tag");
+		tag.setEndTag(m_endTag);
+		if (m_state == NAME)
+		{
+			// no attributes
+			tag.setTag(buf.subSequence(m_nameStart, m_length).toString());
+			parser.parseParams(tag, buf, m_length, unescape);
+			return;
+		}
+		tag.setTag(buf.subSequence(m_nameStart, m_nameEnd).toString());
+
+		// an attribute is certain only if it stopped in front of the
+		// trailing spaces and '/'
+		int end = HtmlTagParser.paramsEnd(buf, m_nameEnd);
+		int from = m_nameEnd;
+		for (int n = 0; n < m_count; n++)
+		{
+			int k = n * SPAN;
+			int next = n + 1 < m_count ? m_spans[k + SPAN] : m_attrStart;
+			if (next >= end)
+				break;
+			String name = buf.subSequence(m_spans[k + 1], m_spans[k + 2]).toString();
+			String whitespaceBefore = buf.subSequence(m_spans[k], m_spans[k + 1]).toString();
+			if (m_spans[k + 3] < 0)
+			{
+				tag.setParam(name, name);
+				tag.setWhitespace(name, whitespaceBefore, "");
+			}
+			else
+			{
+				String value = buf.subSequence(m_spans[k + 3], m_spans[k + 4]).toString();
+				if (unescape)
+					value = HtmlEscaping.unescape(value);
+				tag.setParam(name, value);
+				tag.setWhitespace(name, whitespaceBefore, buf.subSequence(m_spans[k + 2], m_spans[k + 3]).toString());
+			}
+			from = next;
+		}
+		parser.parseParams(tag, buf, from, unescape);
+	}
+}
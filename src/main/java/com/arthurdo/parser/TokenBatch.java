@@ -0,0 +1,185 @@
+package com.arthurdo.parser;
+
+/**
+ * A block of tokens filled in by HtmlStreamTokenizer.nextTokens(). The
+ * type, line, column and input position of each token are kept in primitive
+ * arrays, and the token values are packed one after the other into a
+ * single char arena. A batch is reused from one call to the next, so after
+ * the first few calls filling it allocates nothing.
+ *
+ * @see     com.arthurdo.parser.HtmlStreamTokenizer#nextTokens(TokenBatch)
+ */
+public final class TokenBatch
+{
+	private final int[] m_types;
+	private final int[] m_starts;
+	private final int[] m_lengths;
+	private final int[] m_lines;
+	private final int[] m_columns;
+	private final long[] m_offsets;
+	private final boolean[] m_cdata;
+	private final boolean[] m_partial;
+	private final HtmlCharBuffer m_arena;
+	private int m_size = 0;
+
+	/**
+	 * @param	capacity  maximum number of tokens per batch
+	 */
+	public TokenBatch(int capacity)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		m_types = new int[capacity];
+		m_starts = new int[capacity];
+		m_lengths = new int[capacity];
+		m_lines = new int[capacity];
+		m_columns = new int[capacity];
+		m_offsets = new long[capacity];
+		m_cdata = new boolean[capacity];
+		m_partial = new boolean[capacity];
+		m_arena = new HtmlCharBuffer(capacity * 16);
+	}
+
+	public int capacity()
+	{
+		return m_types.length;
+	}
+
+	/**
+	 * @return	number of tokens in the batch
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * @return	token type of token <i>i</i>, one of the HtmlStreamTokenizer <b>TT_</b> defines
+	 */
+	public int getTokenType(int i)
+	{
+		checkIndex(i);
+		return m_types[i];
+	}
+
+	/**
+	 * @return	index in chars() of the value of token <i>i</i>
+	 */
+	public int getStart(int i)
+	{
+		checkIndex(i);
+		return m_starts[i];
+	}
+
+	/**
+	 * @return	number of chars in the value of token <i>i</i>
+	 */
+	public int getLength(int i)
+	{
+		checkIndex(i);
+		return m_lengths[i];
+	}
+
+	/**
+	 * @return	line number after token <i>i</i> was read
+	 */
+	public int getLineNumber(int i)
+	{
+		checkIndex(i);
+		return m_lines[i];
+	}
+
+	/**
+	 * @return	column at which token <i>i</i> starts, as HtmlStreamTokenizer.getColumnNumber()
+	 */
+	public int getColumnNumber(int i)
+	{
+		checkIndex(i);
+		return m_columns[i];
+	}
+
+	/**
+	 * @return	offset of token <i>i</i> in the input, as HtmlStreamTokenizer.getTokenOffset()
+	 */
+	public long getOffset(int i)
+	{
+		checkIndex(i);
+		return m_offsets[i];
+	}
+
+	public boolean isCDATA(int i)
+	{
+		checkIndex(i);
+		return m_cdata[i];
+	}
+
+	/**
+	 * @return	true if the next token carries on with token <i>i</i>, as
+	 *			HtmlStreamTokenizer.isPartial()
+	 */
+	public boolean isPartial(int i)
+	{
+		checkIndex(i);
+		return m_partial[i];
+	}
+
+	/**
+	 * @return	the arena holding the token values. It is replaced when the
+	 *			batch needs more room, and overwritten by the next fill.
+	 */
+	public char[] chars()
+	{
+		return m_arena.array();
+	}
+
+	/**
+	 * @return	a copy of the value of token <i>i</i>
+	 */
+	public String getValue(int i)
+	{
+		checkIndex(i);
+		return new String(m_arena.array(), m_starts[i], m_lengths[i]);
+	}
+
+	void clear()
+	{
+		m_size = 0;
+		m_arena.setLength(0);
+	}
+
+	boolean isFull()
+	{
+		return m_size == m_types.length;
+	}
+
+	/**
+	 * @return	the arena, for the tokenizer to append the next value to
+	 */
+	HtmlCharBuffer arena()
+	{
+		return m_arena;
+	}
+
+	/**
+	 * Adds a token whose value was just appended to the arena from
+	 * index <i>start</i> on.
+	 */
+	void add(int ttype, int start, int lineno, int column, long offset, boolean cdata, boolean partial)
+	{
+		m_types[m_size] = ttype;
+		m_starts[m_size] = start;
+		m_lengths[m_size] = m_arena.length() - start;
+		m_lines[m_size] = lineno;
+		m_columns[m_size] = column;
+		m_offsets[m_size] = offset;
+		m_cdata[m_size] = cdata;
+		m_partial[m_size] = partial;
+		m_size++;
+	}
+
+	private void checkIndex(int i)
+	{
+		if (i < 0 || i >= m_size)
+			throw new IndexOutOfBoundsException("index " + i + ", size " + m_size);
+	}
+}
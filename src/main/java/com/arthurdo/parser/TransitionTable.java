@@ -0,0 +1,130 @@
+package com.arthurdo.parser;
+
+/**
+ * The states, char classes and transitions of the table driven engine of
+ * HtmlStreamTokenizer, see HtmlStreamTokenizer.setTableDriven(). The
+ * table is written down below as rules, one per state and char class,
+ * and packed into an int array: the entry for state <i>s</i> and class
+ * <i>k</i> is at <code>s &lt;&lt; CLASS_BITS | k</code> and holds the
+ * next state in its low STATE_BITS bits and the action above them.
+ * <p>
+ * The states are finer than the ones of the switch engine, so the
+ * table can tell "&lt;!--" from other bang tags and the end of a comment
+ * without looking at the token. CDATA mode, entity references and
+ * pieces of oversized tokens are left to the switch engine.
+ */
+final class TransitionTable
+{
+	// char classes, all chars from 128 on are OTHER
+	static final int OTHER = 0;
+	static final int LT = 1;
+	static final int GT = 2;
+	static final int BANG = 3;
+	static final int DASH = 4;
+	static final int SQUOTE = 5;
+	static final int DQUOTE = 6;
+	static final int NEWLINE = 7;
+	static final int AMP = 8;
+	static final int CLASS_BITS = 4;
+
+	// states
+	static final int TEXT = 0;
+	static final int TEXT_LT = 1;		// text, then a '<' that may start markup
+	static final int TAG = 2;
+	static final int TAG_SQUOTE = 3;
+	static final int TAG_DQUOTE = 4;
+	static final int BANG_START = 5;	// right after <!
+	static final int BANG_DASH = 6;		// <!-
+	static final int BANGTAG = 7;
+	static final int COMMENT = 8;
+	static final int COMMENT_DASH = 9;	// a comment, the last char was a '-'
+	static final int STATE_COUNT = 10;
+	static final int STATE_BITS = 4;
+
+	// actions
+	static final int APPEND = 0;		// the char is part of the token
+	static final int NEWLINE_APPEND = 1;	// and is a newline to count
+	static final int AMP_APPEND = 2;	// and is an '&' to unescape later
+	static final int SKIP = 3;			// the char is not part of any token
+	static final int DOUBLE_LT = 4;		// "<<" is text
+	static final int START_BANGTAG = 5;	// the text, if any, ends in front of "<!"
+	static final int START_TAG = 6;		// the text, if any, ends in front of '<', the char is pushed back
+	static final int END_TAG = 7;
+	static final int BANG_LT = 8;		// '<' in a bang tag, which then needs one more '>'
+	static final int BANG_GT = 9;
+	static final int START_COMMENT = 10;
+	static final int OPEN_QUOTE = 11;
+	static final int COMMENT_DASH_APPEND = 12;
+	static final int COMMENT_OTHER = 13;	// a char that ends a run of dashes
+	static final int COMMENT_NEWLINE = 14;
+	static final int END_COMMENT = 15;	// if the dashes before make it one
+
+	static final byte[] CLASSES = new byte[128];
+	static final int[] TRANSITIONS = new int[STATE_COUNT << CLASS_BITS];
+
+	static
+	{
+		CLASSES['<'] = LT;
+		CLASSES['>'] = GT;
+		CLASSES['!'] = BANG;
+		CLASSES['-'] = DASH;
+		CLASSES['\''] = SQUOTE;
+		CLASSES['"'] = DQUOTE;
+		CLASSES['\n'] = NEWLINE;
+		CLASSES['&'] = AMP;
+
+		// by default a char is added to the token and the state stays
+		for (int s = 0; s < STATE_COUNT; s++)
+		{
+			for (int k = 0; k < 1 << CLASS_BITS; k++)
+				on(s, k, APPEND, s);
+			on(s, NEWLINE, NEWLINE_APPEND, s);
+		}
+
+		on(TEXT, LT, SKIP, TEXT_LT);
+		on(TEXT, AMP, AMP_APPEND, TEXT);
+
+		for (int k = 0; k < 1 << CLASS_BITS; k++)
+			on(TEXT_LT, k, START_TAG, TAG);
+		on(TEXT_LT, LT, DOUBLE_LT, TEXT);
+		on(TEXT_LT, BANG, START_BANGTAG, BANG_START);
+
+		on(TAG, GT, END_TAG, TEXT);
+		on(TAG, SQUOTE, OPEN_QUOTE, TAG_SQUOTE);
+		on(TAG, DQUOTE, OPEN_QUOTE, TAG_DQUOTE);
+		on(TAG_SQUOTE, SQUOTE, APPEND, TAG);
+		on(TAG_SQUOTE, GT, END_TAG, TEXT);		// some people forget to end the quote
+		on(TAG_DQUOTE, DQUOTE, APPEND, TAG);
+		on(TAG_DQUOTE, GT, END_TAG, TEXT);
+
+		for (int k = 0; k < 1 << CLASS_BITS; k++)
+			on(BANG_START, k, APPEND, BANGTAG);
+		on(BANG_START, NEWLINE, NEWLINE_APPEND, BANGTAG);
+		on(BANG_START, DASH, APPEND, BANG_DASH);
+		for (int k = 0; k < 1 << CLASS_BITS; k++)
+			on(BANG_DASH, k, APPEND, BANGTAG);
+		on(BANG_DASH, NEWLINE, NEWLINE_APPEND, BANGTAG);
+		on(BANG_DASH, DASH, START_COMMENT, COMMENT);
+		for (int s = BANG_START; s <= BANGTAG; s++)
+		{
+			on(s, LT, BANG_LT, BANGTAG);
+			on(s, GT, BANG_GT, BANGTAG);
+		}
+
+		on(COMMENT, DASH, COMMENT_DASH_APPEND, COMMENT_DASH);
+		for (int k = 0; k < 1 << CLASS_BITS; k++)
+			on(COMMENT_DASH, k, COMMENT_OTHER, COMMENT);
+		on(COMMENT_DASH, DASH, COMMENT_DASH_APPEND, COMMENT_DASH);
+		on(COMMENT_DASH, NEWLINE, COMMENT_NEWLINE, COMMENT);
+		on(COMMENT_DASH, GT, END_COMMENT, COMMENT);
+	}
+
+	private static void on(int state, int charClass, int action, int next)
+	{
+		TRANSITIONS[state << CLASS_BITS | charClass] = action << STATE_BITS | next;
+	}
+
+	private TransitionTable()
+	{
+	}
+}
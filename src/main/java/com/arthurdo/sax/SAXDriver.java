@@ -22,6 +22,7 @@ package com.arthurdo.sax;
 import java.util.*;
 import java.net.*;
 import java.io.*;
+import java.nio.charset.Charset;
 
 import org.xml.sax.*;
 
@@ -62,14 +63,20 @@ public class SAXDriver implements Parser, Locator
 	{
 		int line = 0;
 		if (m_tok != null)
-			line = m_tok.getLineNumber();
+			line = m_index < m_batch.size() ? m_batch.getLineNumber(m_index) : m_tok.getLineNumber();
 		return line;
 	}
 
+	/**
+	 * @return	column at which the markup or text of the current event
+	 *			starts
+	 */
 	public int getColumnNumber()
 	{
-		// TODO:
-		return 0;
+		int column = 0;
+		if (m_tok != null)
+			column = m_index < m_batch.size() ? m_batch.getColumnNumber(m_index) : m_tok.getColumnNumber();
+		return column;
 	}
 
 	public void setLocale(Locale locale)
@@ -104,10 +111,12 @@ public class SAXDriver implements Parser, Locator
 	{
 		m_systemId = systemId;
 		InputStream in = null;
+		Charset charset = null;
 		try
 		{
-			URL url = new URL(systemId);
-			in = new BufferedInputStream(url.openStream());
+			URLConnection connection = new URL(systemId).openConnection();
+			in = new BufferedInputStream(connection.getInputStream());
+			charset = HtmlCharsetSniffer.fromContentType(connection.getContentType());
 		}
 		catch (MalformedURLException e)
 		{
@@ -122,7 +131,10 @@ public class SAXDriver implements Parser, Locator
 			}
 		}
 		// at this point 'in' is non-null
-		parse(new HtmlStreamTokenizer(new InputStreamReader(in)));
+		if (charset != null)
+			parse(newTokenizer(new InputStreamReader(in, charset)));		// the server knows best
+		else
+			parse(newTokenizer(HtmlCharsetSniffer.newReader(in)));
 	}
 
 	public void parse(InputSource source)
@@ -132,14 +144,17 @@ public class SAXDriver implements Parser, Locator
 		if (in != null)
 		{
 			in = new BufferedInputStream(in);
-			parse(new HtmlStreamTokenizer(new InputStreamReader(in)));
+			if (source.getEncoding() != null)
+				parse(newTokenizer(new InputStreamReader(in, source.getEncoding())));
+			else
+				parse(newTokenizer(HtmlCharsetSniffer.newReader(in)));
 		}
 		else
 		{
 			Reader rd = source.getCharacterStream();
 			if (rd != null)
 			{
-				parse(new HtmlStreamTokenizer(rd));
+				parse(newTokenizer(rd));
 			}
 			else
 			{
@@ -156,6 +171,17 @@ public class SAXDriver implements Parser, Locator
 		}
 	}
 
+	/**
+	 * @return	a tokenizer that hands over the content of script and style
+	 *			elements as characters rather than as bogus tags
+	 */
+	private static HtmlStreamTokenizer newTokenizer(Reader in)
+	{
+		HtmlStreamTokenizer tok = new HtmlStreamTokenizer(in);
+		tok.setRawTextElements(true);
+		return tok;
+	}
+
 	/**
 	 * Let HtmlStreamTokenizer do the parsing and convert the return values
 	 * into DocumentHandler events
@@ -169,100 +195,83 @@ public class SAXDriver implements Parser, Locator
 		try
 		{
 			SAXElement tag = new SAXElement();
-			int ttype;
-			while ((ttype = tok.nextToken()) != HtmlStreamTokenizer.TT_EOF)
+			while (tok.nextTokens(m_batch) > 0)
 			{
-				// white space
-				if (ttype != HtmlStreamTokenizer.TT_TEXT)
-				{
-					StringBuffer ws = tok.getWhiteSpace();
-					final int len = ws.length();
-					if (len != 0)
-					{
-						m_docHandler.characters(getCharArray(ws, len), 0, len);
-					}
-				}
+				for (m_index = 0; m_index < m_batch.size(); m_index++)
+					token(tok, tag);
+			}
+			m_docHandler.endDocument();
+		}
+		finally
+		{
+			m_tok = null;
+		}
+	}
 
-				if (ttype == HtmlStreamTokenizer.TT_TEXT)
+	/**
+	 * Converts the current token in m_batch into DocumentHandler events.
+	 */
+	private void token(HtmlStreamTokenizer tok, SAXElement tag)
+		throws SAXException
+	{
+		int ttype = m_batch.getTokenType(m_index);
+		if (ttype == HtmlStreamTokenizer.TT_TEXT)
+		{
+			// the handler is only given a view of the batch, not a copy
+			m_docHandler.characters(m_batch.chars(), m_batch.getStart(m_index), m_batch.getLength(m_index));
+		}
+		else if (ttype == HtmlStreamTokenizer.TT_TAG)
+		{
+			String text = m_batch.getValue(m_index);
+			if (text.charAt(0) == '?')
+			{
+				String buf = text.substring(1);
+				final int len = buf.length();
+				int idx = buf.indexOf(' ');
+				if (idx == -1)
+					idx = len;
+				String instruction = buf.substring(0, idx);
+				String attributes = "";
+				if (idx < len)
+					attributes = buf.substring(idx+1).trim();
+				final int alen = attributes.length();
+				if (alen > 0)
 				{
-					StringBuffer stringbuf = tok.getStringValue();
-					StringBuffer whitespace = tok.getWhiteSpace();
-					int wslen = whitespace.length();
-					char[] dataBuf = new char[wslen + stringbuf.length()];
-					if (wslen != 0)
-						whitespace.getChars(0, wslen, dataBuf, 0);
-					if (stringbuf.length() != 0)
-						stringbuf.getChars(0, stringbuf.length(), dataBuf, wslen);
-
-					m_docHandler.characters(dataBuf, 0, dataBuf.length);
+					// strip off trailling '?'
+					if (attributes.charAt(len-1) == '?')
+						attributes = attributes.substring(0, len-1);
 				}
-				else if (ttype == HtmlStreamTokenizer.TT_TAG)
+				m_docHandler.processingInstruction(instruction, attributes);
+			}
+			else
+			{
+				try
 				{
-					StringBuffer text = tok.getStringValue();
-					if (text.charAt(0) == '?')
-					{
-						String buf = text.toString().substring(1);
-						final int len = buf.length();
-						int idx = buf.indexOf(' ');
-						if (idx == -1)
-							idx = len;
-						String instruction = buf.substring(0, idx);
-						String attributes = "";
-						if (idx < len)
-							attributes = buf.substring(idx+1).trim();
-						final int alen = attributes.length();
-						if (alen > 0)
-						{
-							// strip off trailling '?'
-							if (attributes.charAt(len-1) == '?')
-								attributes = attributes.substring(0, len-1);
-						}
-						m_docHandler.processingInstruction(instruction, attributes);
-					}
+					tok.parseTag(text, tag);
+					String tagName = tag.getTagString();
+					if (tag.isEndTag())
+						m_docHandler.endElement(tagName);
 					else
 					{
-						try
-						{
-							tok.parseTag(text, tag);
-							String tagName = tag.getTagString();
-							if (tag.isEndTag())
-								m_docHandler.endElement(tagName);
-							else
-							{
-								m_docHandler.startElement(tagName, tag);
-								if (tag.isEmpty())
-									m_docHandler.endElement(tagName);
-							}
-						}
-						catch (HtmlException e)
-						{
-							m_errHandler.error(new SAXParseException(null, this, e));
-						}
+						m_docHandler.startElement(tagName, tag);
+						if (tag.isEmpty())
+							m_docHandler.endElement(tagName);
 					}
 				}
-				else if (ttype == HtmlStreamTokenizer.TT_BANGTAG)
+				catch (HtmlException e)
 				{
-					// TODO:
-				}
-				else if (ttype == HtmlStreamTokenizer.TT_COMMENT)
-				{
-					// TODO:
+					m_errHandler.error(new SAXParseException(null, this, e));
 				}
 			}
-			m_docHandler.endDocument();
 		}
-		finally
+		else if (ttype == HtmlStreamTokenizer.TT_BANGTAG)
 		{
-			m_tok = null;
+			// TODO:
+		}
+		else if (ttype == HtmlStreamTokenizer.TT_COMMENT)
+		{
+			// TODO:
 		}
-	}
-
-	private static char[] getCharArray(StringBuffer b, final int len)
-	{
-		char[] buf = new char[len];
-		b.getChars(0, len, buf,  0);
-
-		return buf;
 	}
 
 	private static HandlerBase defaultHandler = new HandlerBase();
@@ -273,4 +282,6 @@ public class SAXDriver implements Parser, Locator
 	private String m_publicId;
 	private String m_systemId;
 	private HtmlStreamTokenizer m_tok;
+	private TokenBatch m_batch = new TokenBatch(256);
+	private int m_index = 0;
 }
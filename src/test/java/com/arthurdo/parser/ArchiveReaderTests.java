@@ -0,0 +1,108 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ArchiveReaderTests {
+
+    private static byte[] record(String uri, byte[] content, boolean http) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String headers = "WARC/1.0\r\nWARC-Type: " + (http ? "response" : "resource") + "\r\nWARC-Target-URI: " + uri
+            + "\r\nContent-Type: " + (http ? "application/http; msgtype=response" : "text/html") + "\r\nContent-Length: "
+            + content.length + "\r\n\r\n";
+        out.write(headers.getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+        out.write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    private static List<byte[]> records() throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        records.add(record("http://a/", "<p>caf\u00e9</p>".getBytes(StandardCharsets.UTF_8), false));
+        records.add(record("http://b/", "HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=ISO-8859-1\r\n\r\n<p>caf\u00e9</p>"
+            .getBytes(StandardCharsets.ISO_8859_1), true));
+        StringBuilder big = new StringBuilder("<p>");
+        for (int i = 0; i < 20000; i++)
+            big.append("text ");
+        records.add(record("http://c/", big.toString().getBytes(StandardCharsets.UTF_8), false));
+        records.add(record("http://d/", "<meta charset=windows-1252><p>\u20ac</p>".getBytes("windows-1252"), false));
+        return records;
+    }
+
+    private static File write(List<byte[]> records, boolean gzip) throws IOException {
+        File file = File.createTempFile("archive", gzip ? ".warc.gz" : ".warc");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : records) {
+            if (gzip) {
+                // one member per record, as WARC files have it
+                GZIPOutputStream member = new GZIPOutputStream(out);
+                member.write(record);
+                member.finish();
+            }
+            else
+                out.write(record);
+        }
+        Files.write(file.toPath(), out.toByteArray());
+        return file;
+    }
+
+    /**
+     * @return	URI and the text of the first paragraph of every record
+     */
+    private static List<String> read(HtmlArchiveReader in) throws IOException {
+        List<String> out = new ArrayList<String>();
+        while (in.nextRecord()) {
+            HtmlStreamTokenizer tok = in.getTokenizer();
+            while (tok.nextToken() != HtmlStreamTokenizer.TT_TEXT)
+                ;
+            String text = tok.getTokenValue().toString();
+            out.add(in.getTargetUri() + " " + (text.length() > 10 ? text.length() : text));
+        }
+        in.close();
+        return out;
+    }
+
+    @Test
+    public void shouldReadEveryRecord() throws IOException {
+        for (boolean gzip : new boolean[] { false, true }) {
+            File file = write(records(), gzip);
+            try {
+                assertEquals("[http://a/ caf\u00e9, http://b/ caf\u00e9, http://c/ 100000, http://d/ \u20ac]",
+                    read(new HtmlArchiveReader(file.toPath())).toString());
+            }
+            finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadRangesOfTheIndex() throws IOException {
+        List<byte[]> records = records();
+        for (boolean gzip : new boolean[] { false, true }) {
+            File file = write(records, gzip);
+            try {
+                long[] index = HtmlArchiveReader.index(file.toPath());
+                assertEquals(records.size(), index.length);
+                assertEquals(0L, index[0]);
+                List<String> parts = new ArrayList<String>();
+                parts.addAll(read(new HtmlArchiveReader(file.toPath(), index[0], index[2])));
+                parts.addAll(read(new HtmlArchiveReader(file.toPath(), index[2], Long.MAX_VALUE)));
+                assertEquals(read(new HtmlArchiveReader(file.toPath())), parts);
+            }
+            finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class BulkParserTests {
+
+    private static final HtmlBulkParser.DocumentParser<Integer> COUNT_TAGS = new HtmlBulkParser.DocumentParser<Integer>() {
+        public Integer parse(HtmlStreamTokenizer tok, HtmlTag tag) throws IOException, HtmlException {
+            int count = 0;
+            while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF) {
+                if (tok.getTokenType() == HtmlStreamTokenizer.TT_TAG) {
+                    tok.parseTag(tok.getTokenValue(), tag);
+                    count++;
+                }
+            }
+            return count;
+        }
+    };
+
+    @Test
+    public void shouldParseMixedInputsInOrder() throws Exception {
+        List<Object> inputs = new ArrayList<Object>();
+        for (int i = 0; i < 50; i++) {
+            StringBuilder html = new StringBuilder();
+            for (int j = 0; j < i; j++)
+                html.append("<b>x</b>");
+            switch (i % 4) {
+            case 0: inputs.add(html.toString()); break;
+            case 1: inputs.add(html.toString().toCharArray()); break;
+            case 2: inputs.add(html.toString().getBytes(StandardCharsets.UTF_8)); break;
+            default: inputs.add(new StringReader(html.toString())); break;
+            }
+        }
+        List<HtmlBulkParser.Result<Integer>> results = new HtmlBulkParser(4).parseAll(inputs, COUNT_TAGS);
+
+        assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(results.get(i).isSuccess());
+            assertEquals(2 * i, results.get(i).getValue().intValue());
+            assertTrue(inputs.get(i) == results.get(i).getInput());
+        }
+    }
+
+    @Test
+    public void shouldDecodeBytesInDeclaredEncoding() throws Exception {
+        HtmlBulkParser.DocumentParser<String> text = new HtmlBulkParser.DocumentParser<String>() {
+            public String parse(HtmlStreamTokenizer tok, HtmlTag tag) throws IOException {
+                StringBuilder text = new StringBuilder();
+                while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF) {
+                    if (tok.getTokenType() == HtmlStreamTokenizer.TT_TEXT)
+                        text.append(tok.getTokenValue());
+                }
+                return text.toString();
+            }
+        };
+        String body = "<p>caf\u00e9</p>";
+        List<Object> inputs = Arrays.<Object>asList(
+                ("<meta charset=iso-8859-1>" + body).getBytes(StandardCharsets.ISO_8859_1),
+                ("\ufeff" + body).getBytes(StandardCharsets.UTF_16LE),
+                ("\ufeff" + body).getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+        List<HtmlBulkParser.Result<String>> results = new HtmlBulkParser(2).parseAll(inputs, text);
+
+        for (HtmlBulkParser.Result<String> result : results)
+            assertEquals("caf\u00e9", result.getValue());
+    }
+
+    @Test
+    public void shouldReportFailuresPerDocument() throws Exception {
+        List<HtmlBulkParser.Result<Integer>> results =
+                new HtmlBulkParser(2).parseAll(Arrays.asList("<a>", "< >", new Object()), COUNT_TAGS);
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getFailure() instanceof HtmlException);
+        assertTrue(results.get(2).getFailure() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void shouldReportErrorsPerDocument() throws Exception {
+        HtmlBulkParser.DocumentParser<Integer> overflow = new HtmlBulkParser.DocumentParser<Integer>() {
+            public Integer parse(HtmlStreamTokenizer tok, HtmlTag tag) throws IOException, HtmlException {
+                int count = COUNT_TAGS.parse(tok, tag);
+                if (count > 1)
+                    throw new StackOverflowError();
+                return count;
+            }
+        };
+        List<HtmlBulkParser.Result<Integer>> results =
+                new HtmlBulkParser(2).parseAll(Arrays.asList("<a>", "<a><b>", "<c>"), overflow);
+
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).getFailure() instanceof StackOverflowError);
+        assertEquals(1, results.get(2).getValue().intValue());
+    }
+
+    @Test
+    public void shouldThrowOutOfMemoryError() throws Exception {
+        HtmlBulkParser.DocumentParser<Integer> outOfMemory = new HtmlBulkParser.DocumentParser<Integer>() {
+            public Integer parse(HtmlStreamTokenizer tok, HtmlTag tag) throws IOException, HtmlException {
+                int count = COUNT_TAGS.parse(tok, tag);
+                if (count > 1)
+                    throw new OutOfMemoryError("full");
+                return count;
+            }
+        };
+        HtmlBulkParser parser = new HtmlBulkParser(2);
+        try {
+            parser.parseAll(Arrays.asList("<a>", "<a><b>", "<c>"), outOfMemory);
+            fail("no error");
+        }
+        catch (OutOfMemoryError e) {
+            assertEquals("full", e.getMessage());
+        }
+
+        // the workspaces went back to the pool, the parser is still good
+        List<HtmlBulkParser.Result<Integer>> results = parser.parseAll(Arrays.asList("<a>", "<b>"), COUNT_TAGS);
+        assertEquals(1, results.get(1).getValue().intValue());
+    }
+}
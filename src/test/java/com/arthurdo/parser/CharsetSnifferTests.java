@@ -0,0 +1,66 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class CharsetSnifferTests {
+
+    private static Charset sniff(String page) {
+        byte[] bytes = page.getBytes(StandardCharsets.ISO_8859_1);
+        return HtmlCharsetSniffer.sniff(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void shouldFindMetaCharset() {
+        assertEquals(Charset.forName("ISO-8859-2"), sniff("<html><head><META CHARSET='iso-8859-2'>"));
+        assertEquals(Charset.forName("windows-1251"),
+            sniff("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1251\">"));
+        assertEquals(StandardCharsets.UTF_8, sniff("<meta charset=utf-16>"));
+    }
+
+    @Test
+    public void shouldIgnoreMetaWhereItIsNotATag() {
+        assertNull(sniff("<!-- <meta charset=koi8-r> --><p>"));
+        assertNull(sniff("<a title='<meta charset=koi8-r>'>"));
+        assertNull(sniff("<meta content=\"text/html; charset=koi8-r\">"));        // no http-equiv
+        assertNull(sniff("<meta charset=no-such-charset>"));
+    }
+
+    @Test
+    public void shouldOnlyLookAtTheStart() {
+        StringBuilder page = new StringBuilder();
+        while (page.length() < HtmlCharsetSniffer.PRESCAN_SIZE)
+            page.append("<p>text</p>\n");
+        assertNull(sniff(page + "<meta charset=koi8-r>"));
+    }
+
+    @Test
+    public void shouldDecodeInTheSniffedCharset() throws IOException {
+        byte[] latin2 = "<meta charset=iso-8859-2><p>\u0159\u0161".getBytes("ISO-8859-2");
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(HtmlCharsetSniffer.newReader(new ByteArrayInputStream(latin2)));
+        tok.nextToken();
+        tok.nextToken();
+        tok.nextToken();
+        assertEquals("\u0159\u0161", tok.getTokenValue().toString());
+
+        byte[] bom = "\ufeff<p>\u00e9".getBytes("UTF-16LE");
+        tok = new HtmlStreamTokenizer(HtmlCharsetSniffer.newReader(new ByteArrayInputStream(bom), StandardCharsets.ISO_8859_1));
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenValue().toString());
+        tok.nextToken();
+        assertEquals("\u00e9", tok.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldReadCharsetOfContentType() {
+        assertEquals(StandardCharsets.ISO_8859_1, HtmlCharsetSniffer.fromContentType("text/html; charset=\"ISO-8859-1\""));
+        assertNull(HtmlCharsetSniffer.fromContentType("text/html"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.Assert.assertEquals;
+
+public class CheckpointTests {
+
+    private static final String HTML = "<html>\n<body bgcolor='#fff'>\nsome text<!-- a\ncomment -->\n<p>more</p>\n</body>\n</html>\n";
+
+    private static HtmlTokenizerCheckpoint copy(HtmlTokenizerCheckpoint cp) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(cp);
+        out.close();
+        return (HtmlTokenizerCheckpoint)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    private static void assertSameRest(HtmlStreamTokenizer expected, HtmlStreamTokenizer actual) throws IOException {
+        int ttype;
+        while ((ttype = expected.nextToken()) != HtmlStreamTokenizer.TT_EOF) {
+            assertEquals(ttype, actual.nextToken());
+            assertEquals(expected.getTokenValue().toString(), actual.getTokenValue().toString());
+            assertEquals(expected.getLineNumber(), actual.getLineNumber());
+            assertEquals(expected.getTokenOffset(), actual.getTokenOffset());
+        }
+        assertEquals(HtmlStreamTokenizer.TT_EOF, actual.nextToken());
+    }
+
+    @Test
+    public void shouldResumeReaderFromCheckpoint() throws Exception {
+        for (int skip = 0; skip < 12; skip++) {
+            HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(HTML));
+            for (int i = 0; i < skip; i++)
+                tok.nextToken();
+            HtmlTokenizerCheckpoint cp = copy(tok.checkpoint());
+
+            String rest = HTML.substring((int)cp.getOffset());
+            assertSameRest(tok, new HtmlStreamTokenizer(new StringReader(rest), cp));
+        }
+    }
+
+    @Test
+    public void shouldRestoreInMemoryInput() throws Exception {
+        byte[] utf8 = HTML.getBytes(StandardCharsets.UTF_8);
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(utf8);
+        for (int i = 0; i < 5; i++)
+            tok.nextToken();
+        HtmlTokenizerCheckpoint cp = copy(tok.checkpoint());
+        assertEquals(4, cp.getLineNumber());
+
+        HtmlStreamTokenizer resumed = new HtmlStreamTokenizer(utf8);
+        resumed.restore(cp);
+        assertSameRest(tok, resumed);
+    }
+}
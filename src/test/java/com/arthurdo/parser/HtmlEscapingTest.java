@@ -0,0 +1,27 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class HtmlEscapingTest {
+
+    @Test
+    public void shouldUnescapeCharBuffer() {
+        HtmlCharBuffer buf = new HtmlCharBuffer("a &lt;b&gt; &amp; &#65; c");
+        HtmlEscaping.unescape(buf);
+        assertEquals("a <b> & A c", buf.toString());
+    }
+
+    @Test
+    public void shouldUnescapeStringBufferTheSameWay() {
+        String[] samples = { "a &amp; b", "a AT&T&amp b", "a &amp&amp b", "a &lt&amp b", "&copy;&nbsp;x", "&bogus; &", "&" };
+        for (String sample : samples) {
+            HtmlCharBuffer chars = new HtmlCharBuffer(sample);
+            StringBuffer legacy = new StringBuffer(sample);
+            HtmlEscaping.unescape(chars);
+            HtmlEscaping.unescape(legacy);
+            assertEquals(legacy.toString(), chars.toString());
+        }
+    }
+}
@@ -5,6 +5,9 @@ import com.arthurdo.parser.HtmlTag;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Enumeration;
+
 import static junit.framework.Assert.assertEquals;
 
 public class HtmlTagTest {
@@ -27,4 +30,55 @@ public class HtmlTagTest {
         _tag.setTag("h7");
         assertEquals(HtmlTag.T_UNKNOWN, _tag.getTagType());
     }
+
+    @Test
+    public void shouldFillTagFromRecordedSpans() throws IOException, HtmlException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("<IMG src='a b.png' alt = \"x &amp; y\" ismap width=10/>");
+        tok.setUnescaped(true);
+        tok.setAttributeSpans(true);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        tok.parseTag(_tag);
+        assertEquals(HtmlTag.T_IMG, _tag.getTagType());
+        assertEquals(4, _tag.getParamCount());
+        assertEquals("a b.png", _tag.getParam("src"));
+        assertEquals("x & y", _tag.getParam("alt"));
+        assertEquals("ismap", _tag.getParam("ismap"));
+        assertEquals("10", _tag.getParam("width"));
+        assertEquals(true, _tag.isEmpty());
+    }
+
+    @Test
+    public void shouldKeepParamsInOrderAcrossGrowthAndRemoval() throws HtmlException {
+        _tag.setTag("a");
+        for (int i = 0; i < 10; i++)
+            _tag.setParam("p" + i, "v" + i);
+        _tag.removeParam("P3");
+
+        assertEquals(9, _tag.getParamCount());
+        assertEquals(3, _tag.indexOfParam("p4"));
+        assertEquals("p4", _tag.getParamName(3));
+        assertEquals("v9", _tag.getParamValue(8));
+        assertEquals(null, _tag.getParam("p3"));
+        assertEquals(-1, _tag.indexOfParam("p3"));
+
+        Enumeration names = _tag.getParamNames();
+        Enumeration values = _tag.getParamValues();
+        int n = 0;
+        while (names.hasMoreElements()) {
+            assertEquals(_tag.getParamName(n), names.nextElement());
+            assertEquals(_tag.getParamValue(n), values.nextElement());
+            n++;
+        }
+        assertEquals(9, n);
+        assertEquals(false, values.hasMoreElements());
+
+        HtmlTag copy = new HtmlTag(_tag);
+        _tag.reset();
+        assertEquals(0, _tag.getParamCount());
+        assertEquals(9, copy.getParamCount());
+        assertEquals("v0", copy.getParam("p0"));
+        copy.setParam("p10", "v10");
+        assertEquals("v10", copy.getParamValue(9));
+    }
 }
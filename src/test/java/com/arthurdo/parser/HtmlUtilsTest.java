@@ -0,0 +1,49 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class HtmlUtilsTest {
+
+    private static final String TEXT = "abcdefghijklmnop";
+
+    private static char[] textWith(char c, int at) {
+        char[] buf = TEXT.toCharArray();
+        buf[at] = c;
+        return buf;
+    }
+
+    @Test
+    public void shouldStopAtEachPositionOfUnrolledBlock() {
+        // from offset 1 the blocks are 1-4, 5-8 and 9-12, the tail 13-15
+        for (int at = 1; at < TEXT.length(); at++) {
+            assertEquals(at, HtmlUtils.scanText(textWith('<', at), 1, TEXT.length()));
+            assertEquals(at, HtmlUtils.scanText(textWith('&', at), 1, TEXT.length()));
+            assertEquals(at, HtmlUtils.scanText(textWith('\n', at), 1, TEXT.length()));
+        }
+    }
+
+    @Test
+    public void shouldStopAtLastCharBeforeLimit() {
+        // the limit ends a block, and ends the tail
+        assertEquals(8, HtmlUtils.scanText(textWith('<', 8), 1, 9));
+        assertEquals(9, HtmlUtils.scanText(textWith('<', 9), 1, 10));
+        assertEquals(0, HtmlUtils.scanText(textWith('<', 0), 0, 1));
+    }
+
+    @Test
+    public void shouldNotLookPastLimit() {
+        assertEquals(9, HtmlUtils.scanText(textWith('<', 9), 1, 9));
+        assertEquals(10, HtmlUtils.scanText(textWith('&', 10), 1, 10));
+        assertEquals(5, HtmlUtils.scanText(textWith('\n', 5), 5, 5));
+        assertEquals(TEXT.length(), HtmlUtils.scanText(TEXT.toCharArray(), 0, TEXT.length()));
+    }
+
+    @Test
+    public void shouldRunOverCharsOutsideCtypeTable() {
+        // U+013C, U+0126 and U+010A have the low bytes of '<', '&' and newline
+        char[] buf = "\u00e9t\u00e9 \u20ac\u013c\u0126\u010a<".toCharArray();
+        assertEquals(buf.length - 1, HtmlUtils.scanText(buf, 0, buf.length));
+    }
+}
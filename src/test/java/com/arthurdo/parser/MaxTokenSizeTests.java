@@ -0,0 +1,117 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+
+public class MaxTokenSizeTests {
+
+    private static String pieces(HtmlStreamTokenizer tok, int ttype, int max) throws IOException {
+        StringBuilder value = new StringBuilder();
+        do {
+            assertEquals(ttype, tok.nextToken());
+            assertEquals(true, tok.getTokenValue().length() <= max);
+            value.append(tok.getTokenValue());
+        } while (tok.isPartial());
+        return value.toString();
+    }
+
+    @Test
+    public void shouldReturnLongTextInPieces() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            text.append("some text ");
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(text + "<p>"));
+        tok.setMaxTokenSize(64);
+
+        assertEquals(text.toString(), pieces(tok, HtmlStreamTokenizer.TT_TEXT, 64));
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenValue().toString());
+        assertEquals(false, tok.isPartial());
+    }
+
+    @Test
+    public void shouldEndPiecesWhereTheTextEnds() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("abcdefgh<p>");
+        tok.setMaxTokenSize(4);
+
+        assertEquals("abcdefgh", pieces(tok, HtmlStreamTokenizer.TT_TEXT, 4));
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+    }
+
+    @Test
+    public void shouldKeepCommentEndTogether() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader("<!-- a -- b ---->x"));
+        tok.setMaxTokenSize(3);
+
+        assertEquals(" a -- b --", pieces(tok, HtmlStreamTokenizer.TT_COMMENT, 3));
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("x", tok.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldTruncateLongTags() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("<img src='a-very-long-url'><b>");
+        tok.setMaxTokenSize(8);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("img src=", tok.getTokenValue().toString());
+        assertEquals(true, tok.isTruncated());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("b", tok.getTokenValue().toString());
+        assertEquals(false, tok.isTruncated());
+    }
+
+    @Test
+    public void shouldBoundCDATAPiecesNearExitString() throws IOException {
+        // partial matches of the exit string around the piece boundaries
+        String[] texts = { "abc</scx", "a</s</sc", "abcd</scrip", "<<<", "</SCRIPTabcd" };
+        for (int max = 1; max <= 5; max++) {
+            for (String text : texts) {
+                HtmlStreamTokenizer[] toks = {
+                    new HtmlStreamTokenizer(text + "</script><p>"),
+                    new HtmlStreamTokenizer(new StringReader(text + "</script><p>")),
+                };
+                for (HtmlStreamTokenizer tok : toks) {
+                    tok.setMaxTokenSize(max);
+                    tok.enterCDATAMode("</script>".toCharArray(), false);
+
+                    StringBuilder value = new StringBuilder();
+                    do {
+                        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+                        assertEquals(true, tok.getTokenLength() <= max);
+                        value.append(tok.getTokenValue());
+                    } while (tok.isPartial());
+                    assertEquals(text, value.toString());
+                    assertEquals(true, tok.isCDATA());
+                    assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+                    assertEquals("p", tok.getTokenValue().toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotCutBytesInsideAChar() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("a\u00e9\u00e9\u00e9<p>".getBytes("UTF-8"));
+        tok.setMaxTokenSize(2);
+
+        assertEquals("a\u00e9\u00e9\u00e9", pieces(tok, HtmlStreamTokenizer.TT_TEXT, 2));
+    }
+
+    @Test
+    public void shouldDropWholeCharsFromTruncatedTag() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("<;\u4e2d\u4e2d\u00e9><p>".getBytes("UTF-8"));
+        tok.setMaxTokenSize(3);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(";\u4e2d", tok.getTokenValue().toString());
+        assertEquals(4, tok.getTokenLength());
+        assertEquals(true, tok.isTruncated());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenValue().toString());
+    }
+}
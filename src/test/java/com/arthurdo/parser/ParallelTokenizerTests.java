@@ -0,0 +1,60 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ParallelTokenizerTests {
+
+    private static List<HtmlToken> sequential(String html) throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html);
+        List<HtmlToken> tokens = new ArrayList<HtmlToken>();
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF)
+            tokens.add(tok.getToken());
+        return tokens;
+    }
+
+    private static List<HtmlToken> parallel(String html, int chunkSize) throws IOException {
+        HtmlParallelTokenizer tok = new HtmlParallelTokenizer(html);
+        tok.setChunkSize(chunkSize);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            return tok.tokenize(pool);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRecoverFromChunkStartingInComment() throws IOException {
+        String html = "<p>one</p>\n<!-- <b>not a tag</b>\n -->\n<p>two</p>\n";
+        for (int chunkSize = 1; chunkSize < html.length(); chunkSize++)
+            assertEquals(sequential(html), parallel(html, chunkSize));
+    }
+
+    @Test
+    public void shouldRecoverFromChunkStartingInQuotedValue() throws IOException {
+        String html = "<a title='<b>x</b>' href=\"<i>\">\nlink\n</a><br>";
+        for (int chunkSize = 1; chunkSize < html.length(); chunkSize++)
+            assertEquals(sequential(html), parallel(html, chunkSize));
+    }
+
+    @Test
+    public void shouldShiftLineNumbers() throws IOException {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            html.append("<tr>\n<td>").append(i).append("</td>\n</tr>\n");
+        List<HtmlToken> tokens = parallel(html.toString(), 64);
+
+        assertEquals(sequential(html.toString()), tokens);
+        HtmlToken last = tokens.get(tokens.size() - 1);
+        assertEquals("\n", last.getValue());
+        assertEquals(301, last.getLineNumber());
+    }
+}
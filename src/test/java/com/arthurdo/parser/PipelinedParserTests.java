@@ -0,0 +1,133 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.fail;
+
+public class PipelinedParserTests {
+
+    private static final Executor NEW_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    private static String page() {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            page.append("<p class='c").append(i).append("'>text ").append(i).append(" &amp; more<!-- c -->\n<script>a < b</script>");
+        return page.toString();
+    }
+
+    @Test
+    public void shouldDeliverTheTokensOfTheTokenizer() throws IOException, HtmlException {
+        String page = page();
+        List<String> expected = new ArrayList<String>();
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(page));
+        tok.setRawTextElements(true);
+        HtmlTag tag = new HtmlTag();
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF) {
+            String value = tok.getTokenValue().toString();
+            if (tok.getTokenType() == HtmlStreamTokenizer.TT_TAG) {
+                tok.parseTag(value, tag);
+                value = tag.toString();
+            }
+            expected.add(tok.getTokenType() + "|" + value + "|" + tok.getLineNumber());
+        }
+
+        // small chunks and batches, so the stages have to wait for each other
+        final List<String> tokens = new ArrayList<String>();
+        HtmlPipelinedParser parser = new HtmlPipelinedParser(NEW_THREAD, 64, 2, 4, 2);
+        for (int round = 0; round < 2; round++) {
+            tokens.clear();
+            parser.parse(new StringReader(page), new HtmlPipelinedParser.TokenConsumer() {
+                public void token(TokenBatch batch, int i, HtmlTag tag) {
+                    String value = tag != null ? tag.toString() : batch.getValue(i);
+                    tokens.add(batch.getTokenType(i) + "|" + value + "|" + batch.getLineNumber(i));
+                }
+            });
+            assertEquals(expected, tokens);
+        }
+    }
+
+    @Test
+    public void shouldThrowWhatTheInputThrows() {
+        Reader broken = new Reader() {
+            private int m_reads = 0;
+
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (m_reads++ > 3)
+                    throw new IOException("broken");
+                cbuf[off] = 'x';
+                return 1;
+            }
+
+            public void close() {
+            }
+        };
+        try {
+            new HtmlPipelinedParser(NEW_THREAD).parse(broken, new HtmlPipelinedParser.TokenConsumer() {
+                public void token(TokenBatch batch, int i, HtmlTag tag) {
+                }
+            });
+            fail("no exception");
+        }
+        catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldStopWhenTheConsumerThrows() throws IOException {
+        HtmlPipelinedParser parser = new HtmlPipelinedParser(NEW_THREAD, 64, 2, 4, 2);
+        try {
+            parser.parse(new StringReader(page()), new HtmlPipelinedParser.TokenConsumer() {
+                public void token(TokenBatch batch, int i, HtmlTag tag) {
+                    throw new IllegalStateException("enough");
+                }
+            });
+            fail("no exception");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("enough", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldStopFirstStageWhenSecondIsRejected() throws IOException, InterruptedException {
+        final List<Thread> threads = new ArrayList<Thread>();
+        Executor oneThread = new Executor() {
+            public void execute(Runnable command) {
+                if (!threads.isEmpty())
+                    throw new RejectedExecutionException("full");
+                Thread thread = new Thread(command);
+                threads.add(thread);
+                thread.start();
+            }
+        };
+        // more input than the chunks hold, so the first stage waits for a free one
+        HtmlPipelinedParser parser = new HtmlPipelinedParser(oneThread, 64, 2, 4, 2);
+        try {
+            parser.parse(new StringReader(page()), new HtmlPipelinedParser.TokenConsumer() {
+                public void token(TokenBatch batch, int i, HtmlTag tag) {
+                }
+            });
+            fail("no exception");
+        }
+        catch (RejectedExecutionException e) {
+            assertEquals("full", e.getMessage());
+        }
+        threads.get(0).join(10000);
+        assertFalse(threads.get(0).isAlive());
+    }
+}
@@ -0,0 +1,63 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+
+public class PositionTests {
+
+    private static final String HTML = "<html>\n  <body>\n    some <b>bold</b> text<!-- a\ncomment -->\n</body>";
+
+    @Test
+    public void shouldReportStartAndEndOfTokens() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(HTML));
+        long end = 0;
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF) {
+            assertEquals(end, tok.getTokenStart());
+            end = tok.getTokenEnd();
+        }
+        assertEquals(HTML.length(), end);
+    }
+
+    @Test
+    public void shouldReportLineAndColumnOfTokenStart() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(HTML.toCharArray());
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF) {
+            if (tok.getTokenType() == HtmlStreamTokenizer.TT_COMMENT)
+                break;
+        }
+        assertEquals(HTML.indexOf("<!--"), tok.getTokenStart());
+        assertEquals(3, tok.getStartLineNumber());
+        assertEquals(26, tok.getColumnNumber());
+        assertEquals(4, tok.getLineNumber(tok.getTokenEnd()));
+        assertEquals(12, tok.getColumnNumber(tok.getTokenEnd()));
+
+        HtmlToken token = tok.getToken();
+        assertEquals(tok.getTokenStart(), token.getStart());
+        assertEquals(tok.getTokenEnd(), token.getEnd());
+        assertEquals(26, token.getColumnNumber());
+    }
+
+    @Test
+    public void shouldFillColumnsIntoBatch() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(HTML));
+        TokenBatch batch = new TokenBatch(16);
+        int n = tok.nextTokens(batch);
+        assertEquals(HtmlStreamTokenizer.TT_TAG, batch.getTokenType(2));
+        assertEquals("body", batch.getValue(2));
+        assertEquals(3, batch.getColumnNumber(2));
+        assertEquals(1, batch.getColumnNumber(0));
+        assertEquals(true, n > 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseOffsetsBeforeToken() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(HTML);
+        tok.nextToken();
+        tok.nextToken();
+        tok.getColumnNumber(0);
+    }
+}
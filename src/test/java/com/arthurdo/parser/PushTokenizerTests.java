@@ -0,0 +1,125 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class PushTokenizerTests {
+
+    private static class Collector implements HtmlTokenHandler {
+        final List<String> tokens = new ArrayList<String>();
+
+        public void token(HtmlStreamTokenizer tok) {
+            tokens.add(tok.getTokenType() + ":" + tok.getTokenValue());
+        }
+    }
+
+    @Test
+    public void shouldCarryStateAcrossPieces() throws IOException {
+        String html = "<a title='x < y'>t</a><!-- a -- b --><script>if (a<b) x();</script>";
+        HtmlPushTokenizer push = new HtmlPushTokenizer();
+        Collector collector = new Collector() {
+            public void token(HtmlStreamTokenizer tok) {
+                super.token(tok);
+                if (tok.getTokenType() == HtmlStreamTokenizer.TT_TAG && tok.getTokenValue().toString().equals("script"))
+                    tok.enterCDATAMode("</script>".toCharArray(), false);
+            }
+        };
+
+        for (int i = 0; i < html.length(); i++) {
+            push.feed(CharBuffer.wrap(html, i, i + 1));
+            push.drain(collector);
+        }
+        assertEquals(6, collector.tokens.size());
+        assertFalse(push.isDone());
+        push.endOfInput();
+        push.drain(collector);
+        assertTrue(push.isDone());
+
+        assertEquals("-3:a title='x < y'", collector.tokens.get(0));
+        assertEquals("-4: a -- b ", collector.tokens.get(3));
+        assertEquals("-2:if (a<b) x();", collector.tokens.get(5));
+    }
+
+    @Test(timeout = 20000)
+    public void shouldScanLongCommentFedCharByCharOnce() throws IOException {
+        // rescanning the comment for every char fed would take hours
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1 << 20; i++)
+            body.append(i % 64 == 0 ? '\n' : '-');
+        String html = "<!--" + body + "-->";
+        HtmlPushTokenizer push = new HtmlPushTokenizer();
+        Collector collector = new Collector();
+
+        for (int i = 0; i < html.length(); i++) {
+            push.feed(CharBuffer.wrap(html, i, i + 1));
+            push.drain(collector);
+        }
+        push.endOfInput();
+        push.drain(collector);
+
+        assertEquals(1, collector.tokens.size());
+        assertEquals(HtmlStreamTokenizer.TT_COMMENT + ":" + body, collector.tokens.get(0));
+    }
+
+    @Test(timeout = 20000)
+    public void shouldBoundPiecesOfLongCommentFedCharByChar() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1 << 20; i++)
+            body.append((char)('a' + i % 26));
+        String html = "<!--" + body + "-->";
+        HtmlPushTokenizer push = new HtmlPushTokenizer();
+        push.getTokenizer().setMaxTokenSize(1000);
+        final StringBuilder comment = new StringBuilder();
+        final int[] pieces = new int[1];
+        HtmlTokenHandler handler = new HtmlTokenHandler() {
+            public void token(HtmlStreamTokenizer tok) {
+                assertEquals(HtmlStreamTokenizer.TT_COMMENT, tok.getTokenType());
+                assertTrue(tok.getTokenLength() <= 1000);
+                comment.append(tok.getTokenValue());
+                pieces[0]++;
+            }
+        };
+
+        for (int i = 0; i < html.length(); i++) {
+            push.feed(CharBuffer.wrap(html, i, i + 1));
+            push.drain(handler);
+        }
+        push.endOfInput();
+        push.drain(handler);
+
+        assertEquals(body.toString(), comment.toString());
+        assertEquals((1 << 20) / 1000 + 1, pieces[0]);
+    }
+
+    @Test
+    public void shouldDecodeCharactersSplitBetweenPieces() throws IOException {
+        byte[] html = "<p>d\u00e9j\u00e0 \u4e2d</p>".getBytes(StandardCharsets.UTF_8);
+        HtmlPushTokenizer push = new HtmlPushTokenizer();
+        TokenBatch batch = new TokenBatch(8);
+        List<String> tokens = new ArrayList<String>();
+
+        for (int i = 0; i < html.length; i++) {
+            push.feed(ByteBuffer.wrap(html, i, 1));
+            int n = push.drain(batch);
+            for (int j = 0; j < n; j++)
+                tokens.add(batch.getValue(j));
+        }
+        push.endOfInput();
+        int n = push.drain(batch);
+        for (int j = 0; j < n; j++)
+            tokens.add(batch.getValue(j));
+
+        assertEquals(3, tokens.size());
+        assertEquals("d\u00e9j\u00e0 \u4e2d", tokens.get(1));
+    }
+}
@@ -0,0 +1,118 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+
+public class RawTextTests {
+
+    private static String script(HtmlStreamTokenizer tok) throws IOException {
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        tok.enterCDATAMode("</script>".toCharArray(), false);
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals(true, tok.isCDATA());
+        return tok.getTokenValue().toString();
+    }
+
+    @Test
+    public void shouldTakeLongScriptUpToExit() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            body.append("if (a < b && c > d) { s = '</scr' + 'ipt>'; }\n");
+        String html = "<script>" + body + "</SCRIPT><p>";
+
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(html));
+        assertEquals(body.toString(), script(tok));
+        assertEquals(2001, tok.getLineNumber());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenValue().toString());
+
+        tok = new HtmlStreamTokenizer(html.toCharArray());
+        assertEquals(body.toString(), script(tok));
+        assertEquals(html.indexOf("if"), tok.getTokenOffset());
+    }
+
+    @Test
+    public void shouldFindExitAfterPartialMatch() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader("<script>x<</SCR</script>"));
+        assertEquals("x<</SCR", script(tok));
+        assertEquals(HtmlStreamTokenizer.TT_EOF, tok.nextToken());
+    }
+
+    @Test
+    public void shouldKeepPartialExitAtEndOfInput() throws IOException {
+        String[] inputs = { "x<<", "a</s</sc", "</SCR", "ab</script", "<" };
+        for (boolean tableDriven : new boolean[] { false, true }) {
+            for (String input : inputs) {
+                HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(input));
+                tok.setTableDriven(tableDriven);
+                tok.enterCDATAMode("</script>".toCharArray(), false);
+                assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+                assertEquals(input, tok.getTokenValue().toString());
+                assertEquals(HtmlStreamTokenizer.TT_EOF, tok.nextToken());
+
+                tok = new HtmlStreamTokenizer(input.toCharArray());
+                tok.setTableDriven(tableDriven);
+                tok.enterCDATAMode("</script>".toCharArray(), false);
+                assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+                assertEquals(input, tok.getTokenValue().toString());
+                assertEquals(0, tok.getTokenOffset());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRecognizeRawTextElements() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(
+            "<SCRIPT type=x>if (a<b) s = '</scripts>';</script ><title>A &amp; B</title><style/><p>"));
+        tok.setRawTextElements(true);
+        tok.setUnescaped(true);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("if (a<b) s = '</scripts>';", tok.getTokenValue().toString());
+        assertEquals(true, tok.isCDATA());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("/script ", tok.getTokenValue().toString());
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("A & B", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("/title", tok.getTokenValue().toString());
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("style/", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldResumeInsideRawTextElement() throws IOException {
+        String html = "<script>a<b>c</script>";
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html.toCharArray());
+        tok.setRawTextElements(true);
+        tok.nextToken();
+        HtmlTokenizerCheckpoint cp = tok.checkpoint();
+
+        HtmlStreamTokenizer resumed = new HtmlStreamTokenizer(new StringReader(html.substring((int)cp.getOffset())), cp);
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, resumed.nextToken());
+        assertEquals("a<b>c", resumed.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, resumed.nextToken());
+        assertEquals("/script", resumed.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldReplayExitStringWhenPushedBack() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("<textarea>a<b></textarea>".toCharArray());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        tok.enterCDATAMode("</textarea>".toCharArray(), true);
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("a<b>", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(false, tok.isCDATA());
+    }
+}
@@ -0,0 +1,83 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class ResetTests {
+
+    private static final String PAGE = "<p>one\n<!-- two -->\n<script>if (a < b) x();</script>three &amp; four";
+
+    private static List<String> tokens(HtmlStreamTokenizer tok) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF)
+            tokens.add(tok.getTokenType() + "|" + tok.getTokenValue() + "|" + tok.getLineNumber()
+                + "|" + tok.getTokenOffset() + "|" + tok.isCDATA());
+        return tokens;
+    }
+
+    @Test
+    public void shouldStartOverAfterReset() throws IOException {
+        HtmlStreamTokenizer fresh = new HtmlStreamTokenizer(new StringReader(PAGE));
+        fresh.setRawTextElements(true);
+        List<String> expected = tokens(fresh);
+
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader("a\nb<script>x<!-- y"));
+        tok.setRawTextElements(true);
+        tok.nextToken();
+        tok.nextToken();
+        tok.nextToken();        // stopped in the middle of the script
+
+        tok.reset(new StringReader(PAGE));
+        assertEquals(expected, tokens(tok));
+        tok.reset(PAGE.toCharArray());
+        assertEquals(expected, tokens(tok));
+        tok.reset(PAGE);
+        assertEquals(expected, tokens(tok));
+        tok.reset(CharBuffer.wrap(PAGE.toCharArray()));
+        assertEquals(expected, tokens(tok));
+        tok.reset(PAGE.getBytes("UTF-8"));
+        assertEquals(expected, tokens(tok));
+    }
+
+    @Test
+    public void shouldGiveBackBufferAfterLargeToken() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            text.append("x");
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(text + "<p>"));
+
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals(100000, tok.getTokenValue().length());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertTrue(tok.getTokenValue().capacity() < 100000);
+    }
+
+    @Test
+    public void shouldResetPushTokenizer() throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        HtmlTokenHandler handler = new HtmlTokenHandler() {
+            public void token(HtmlStreamTokenizer tok) {
+                tokens.add(tok.getTokenValue().toString());
+            }
+        };
+        HtmlPushTokenizer push = new HtmlPushTokenizer();
+        push.feed(CharBuffer.wrap("<p>a<!-- b"));
+        push.drain(handler);
+
+        push.reset();
+        tokens.clear();
+        push.feed(CharBuffer.wrap("<i>c</i>"));
+        push.endOfInput();
+        push.drain(handler);
+        assertEquals("[i, c, /i]", tokens.toString());
+        assertEquals(true, push.isDone());
+    }
+}
@@ -0,0 +1,47 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TableDrivenTests {
+
+    private static final String PAGE = "<!DOCTYPE html>\n<p class='a>b' id=\"c\">one &amp; two<<three\n"
+        + "<!-- a - b -- c --->\n<!x<y>>\n<\nbr>four</p><!--->-->five<";
+
+    private static List<String> tokens(HtmlStreamTokenizer tok, boolean tableDriven) throws IOException {
+        tok.setTableDriven(tableDriven);
+        tok.setUnescaped(true);
+        List<String> tokens = new ArrayList<String>();
+        while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF)
+            tokens.add(tok.getTokenType() + "|" + tok.getTokenValue() + "|" + tok.getLineNumber()
+                + "|" + tok.getTokenStart() + "-" + tok.getTokenEnd() + "|" + tok.getColumnNumber());
+        return tokens;
+    }
+
+    @Test
+    public void shouldReturnTheSameTokensAsTheSwitch() throws IOException {
+        List<String> expected = tokens(new HtmlStreamTokenizer(PAGE), false);
+        assertTrue(expected.size() > 10);
+        assertEquals(expected, tokens(new HtmlStreamTokenizer(PAGE), true));
+        assertEquals(expected, tokens(new HtmlStreamTokenizer(PAGE.toCharArray()), true));
+        assertEquals(expected, tokens(new HtmlStreamTokenizer(new StringReader(PAGE)), true));
+    }
+
+    @Test
+    public void shouldHandOverToTheSwitchForRawText() throws IOException {
+        String page = "<p>a<script>if (a < b) x();</script><!-- c -->";
+        HtmlStreamTokenizer switched = new HtmlStreamTokenizer(page);
+        switched.setRawTextElements(true);
+        HtmlStreamTokenizer table = new HtmlStreamTokenizer(page);
+        table.setRawTextElements(true);
+
+        assertEquals(tokens(switched, false), tokens(table, true));
+    }
+}
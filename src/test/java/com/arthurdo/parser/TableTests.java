@@ -67,6 +67,15 @@ public class TableTests {
          table.getRows();
     }
 
+    @Test
+    public void shouldSkipTablesWrittenByScripts() {
+        String script = "<script>document.write('<table><tr><td>x</td></tr></table>');</script>";
+        Table table = readTable(script + makeHtmlTable("<tr><td>a</td></tr>"));
+
+        assertEquals(1, table.getRows());
+        assertEquals("a", table.elementAt(0, 0).getCharacterData());
+    }
+
     private Table readTable(String html) {
         try {
             Table table = new Table();
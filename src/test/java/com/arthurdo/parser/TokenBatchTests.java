@@ -0,0 +1,52 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+public class TokenBatchTests {
+
+    private static final String HTML = "<p class=x>caf\u00e9 &amp; bar</p>\n<!-- note --><br>\ntail";
+
+    private static void assertSameTokens(HtmlStreamTokenizer expected, HtmlStreamTokenizer actual) throws IOException {
+        TokenBatch batch = new TokenBatch(3);
+        int n;
+        while ((n = actual.nextTokens(batch)) > 0) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected.nextToken(), batch.getTokenType(i));
+                assertEquals(expected.getTokenValue().toString(), batch.getValue(i));
+                assertEquals(expected.getTokenValue().toString(),
+                        new String(batch.chars(), batch.getStart(i), batch.getLength(i)));
+                assertEquals(expected.getLineNumber(), batch.getLineNumber(i));
+                assertEquals(expected.getTokenOffset(), batch.getOffset(i));
+            }
+        }
+        assertEquals(HtmlStreamTokenizer.TT_EOF, expected.nextToken());
+    }
+
+    @Test
+    public void shouldBatchTheSameTokens() throws IOException {
+        assertSameTokens(new HtmlStreamTokenizer(HTML.toCharArray()), new HtmlStreamTokenizer(HTML.toCharArray()));
+        assertSameTokens(new HtmlStreamTokenizer(new StringReader(HTML)), new HtmlStreamTokenizer(new StringReader(HTML)));
+        byte[] utf8 = HTML.getBytes(StandardCharsets.UTF_8);
+        assertSameTokens(new HtmlStreamTokenizer(utf8), new HtmlStreamTokenizer(utf8));
+    }
+
+    @Test
+    public void shouldBatchUnescapedTokens() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(HTML);
+        tok.setUnescaped(true);
+        TokenBatch batch = new TokenBatch(16);
+
+        assertEquals(7, tok.nextTokens(batch));
+        assertEquals("caf\u00e9 & bar", batch.getValue(1));
+        assertFalse(batch.isCDATA(1));
+        assertEquals(0, tok.nextTokens(batch));
+        assertEquals(0, batch.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TokenFilterTests {
+
+    private static final String HTML = "<html>\n<head><link rel=stylesheet href=a.css></head>\n"
+            + "<body>some &amp; text<!-- comment --><a href=x.html>x</a>\n<A HREF='y.html'>y</a></body>";
+
+    @Test
+    public void shouldOnlyReturnWantedTags() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(HTML));
+        tok.setTokenFilter(HtmlStreamTokenizer.TT_TAG);
+        tok.setTagFilter(HtmlTag.T_A, HtmlTag.T_LINK);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("link rel=stylesheet href=a.css", tok.getTokenValue().toString());
+        assertEquals(2, tok.getLineNumber());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("a href=x.html", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("/a", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("A HREF='y.html'", tok.getTokenValue().toString());
+        assertEquals(4, tok.getLineNumber());
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(HtmlStreamTokenizer.TT_EOF, tok.nextToken());
+    }
+
+    @Test
+    public void shouldOnlyReturnWantedTokenTypes() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader(HTML));
+        tok.setUnescaped(true);
+        tok.setTokenFilter(HtmlStreamTokenizer.TT_COMMENT, HtmlStreamTokenizer.TT_TEXT);
+
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("\n", tok.getTokenValue().toString());
+        tok.nextToken();
+        tok.nextToken();
+        assertEquals("some & text", tok.getTokenValue().toString());
+        assertEquals(HtmlStreamTokenizer.TT_COMMENT, tok.nextToken());
+        assertEquals(" comment ", tok.getTokenValue().toString());
+
+        tok.setTokenFilter();
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+    }
+}
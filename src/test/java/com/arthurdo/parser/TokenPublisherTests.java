@@ -0,0 +1,130 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class TokenPublisherTests {
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Recorder implements Flow.Subscriber<HtmlToken> {
+        final List<String> tokens = new ArrayList<String>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(HtmlToken token) {
+            tokens.add(token.getValue());
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    @Test
+    public void shouldOnlyReadWhatIsRequested() {
+        HtmlTokenPublisher publisher = new HtmlTokenPublisher(new HtmlStreamTokenizer(new StringReader("<a>b<c>d")), DIRECT);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(2);
+        assertEquals(2, recorder.tokens.size());
+        assertFalse(recorder.complete);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(4, recorder.tokens.size());
+        assertEquals("d", recorder.tokens.get(3));
+        assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void shouldRejectSecondSubscriber() {
+        HtmlTokenPublisher publisher = new HtmlTokenPublisher(new HtmlStreamTokenizer("<a>"), DIRECT);
+        publisher.subscribe(new Recorder());
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void shouldSignalBadRequest() {
+        HtmlTokenPublisher publisher = new HtmlTokenPublisher(new HtmlStreamTokenizer("<a>"), DIRECT);
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        recorder.subscription.request(1);
+        assertEquals(0, recorder.tokens.size());
+    }
+
+    @Test
+    public void shouldCancelWhenSubscriberThrows() {
+        HtmlTokenPublisher publisher = new HtmlTokenPublisher(new HtmlStreamTokenizer("<a>b<c>d"), DIRECT);
+        final IllegalStateException thrown = new IllegalStateException("subscriber bug");
+        Recorder recorder = new Recorder() {
+            public void onNext(HtmlToken token) {
+                super.onNext(token);
+                if (tokens.size() == 2)
+                    throw thrown;
+            }
+        };
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(2, recorder.tokens.size());
+        assertTrue(recorder.error == thrown);
+        recorder.subscription.request(1);
+        assertEquals(2, recorder.tokens.size());
+        assertFalse(recorder.complete);
+    }
+
+    @Test
+    public void shouldDeliverOnOwnThreadByDefault() throws InterruptedException {
+        HtmlTokenPublisher publisher = new HtmlTokenPublisher(new HtmlStreamTokenizer(new StringReader("<a>b<c>d")));
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> threads = new ArrayList<String>();
+        Recorder recorder = new Recorder() {
+            public void onNext(HtmlToken token) {
+                super.onNext(token);
+                threads.add(Thread.currentThread().getName());
+            }
+
+            public void onComplete() {
+                super.onComplete();
+                done.countDown();
+            }
+        };
+        publisher.subscribe(recorder);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(4, recorder.tokens.size());
+        assertEquals("html-token-publisher", threads.get(0));
+    }
+}
@@ -0,0 +1,137 @@
+package com.arthurdo.parser;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static junit.framework.Assert.assertEquals;
+
+public class TokenSliceTests {
+
+    @Test
+    public void shouldReturnSlicesOfCharArray() throws IOException {
+        char[] html = "<p>Hallo world</p>".toCharArray();
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals("p", tok.getTokenSlice().toString());
+        assertEquals(1, tok.getTokenOffset());
+        assertEquals(1, tok.getTokenLength());
+
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals("Hallo world", tok.getTokenSlice().toString());
+        assertEquals(3, tok.getTokenOffset());
+        assertEquals(11, tok.getTokenLength());
+    }
+
+    @Test
+    public void shouldReportOffsetsIntoCharSequence() throws IOException {
+        String html = "abc<!-- note --><b>";
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html);
+
+        tok.nextToken();
+        tok.nextToken();
+        assertEquals(HtmlStreamTokenizer.TT_COMMENT, tok.getTokenType());
+        assertEquals(" note ", tok.getTokenSlice().toString());
+        assertEquals(html.indexOf(" note "), tok.getTokenOffset());
+    }
+
+    @Test
+    public void shouldKeepRawSliceWhenUnescaping() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer("a &amp; b".toCharArray());
+        tok.setUnescaped(true);
+
+        tok.nextToken();
+        assertEquals("a & b", tok.getStringValue().toString());
+        assertEquals("a &amp; b", tok.getTokenSlice().toString());
+    }
+
+    @Test
+    public void shouldUnescapeReaderTokensOnlyWhenAsked() throws IOException {
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(new StringReader("x &lt; y<br>z"));
+        tok.setUnescaped(true);
+
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals(true, tok.needsUnescaping());
+        assertEquals("x &lt; y", tok.getTokenSlice().toString());
+        assertEquals("x < y", tok.getTokenValue().toString());
+        assertEquals("x &lt; y", tok.getTokenSlice().toString());
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        assertEquals(false, tok.needsUnescaping());
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        assertEquals(false, tok.needsUnescaping());
+        assertEquals("z", tok.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldMatchReaderTokens() throws IOException {
+        String html = "<table><tr><td colspan=2>x &lt; y</td></tr></table>";
+        HtmlStreamTokenizer fromReader = new HtmlStreamTokenizer(new StringReader(html));
+        HtmlStreamTokenizer fromString = new HtmlStreamTokenizer(html);
+
+        int ttype;
+        while ((ttype = fromReader.nextToken()) != HtmlStreamTokenizer.TT_EOF) {
+            assertEquals(ttype, fromString.nextToken());
+            assertEquals(fromReader.getStringValue().toString(), fromString.getStringValue().toString());
+        }
+        assertEquals(HtmlStreamTokenizer.TT_EOF, fromString.nextToken());
+    }
+
+    @Test
+    public void shouldDecodeUtf8OnlyWhenAsked() throws IOException, HtmlException {
+        byte[] html = "<p title='d\u00e9j\u00e0'>\u00fcber</p>".getBytes(StandardCharsets.UTF_8);
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html);
+
+        assertEquals(HtmlStreamTokenizer.TT_TAG, tok.nextToken());
+        HtmlTag tag = new HtmlTag();
+        tok.parseTag(tok.getTokenValue(), tag);
+        assertEquals("d\u00e9j\u00e0", tag.getParam("title"));
+
+        assertEquals(HtmlStreamTokenizer.TT_TEXT, tok.nextToken());
+        ByteBuffer bytes = tok.getTokenBytes();
+        assertEquals(5, bytes.remaining());
+        assertEquals(5, tok.getTokenLength());
+        assertEquals("\u00fcber", tok.getTokenValue().toString());
+    }
+
+    @Test
+    public void shouldReportByteOffsets() throws IOException {
+        byte[] html = "\u00e9\u00e9<b>".getBytes(StandardCharsets.UTF_8);
+        HtmlStreamTokenizer tok = new HtmlStreamTokenizer(html);
+
+        tok.nextToken();
+        assertEquals(0, tok.getTokenOffset());
+        assertEquals(4, tok.getTokenLength());
+        tok.nextToken();
+        assertEquals("b", tok.getTokenValue().toString());
+        assertEquals(5, tok.getTokenOffset());
+    }
+
+    @Test
+    public void shouldTokenizeMappedFile() throws IOException {
+        File file = File.createTempFile("mapped", ".html");
+        try {
+            Files.write(file.toPath(), "<html>\n<b>caf\u00e9</b>\n</html>".getBytes(StandardCharsets.UTF_8));
+            HtmlStreamTokenizer tok = HtmlStreamTokenizer.map(file.toPath());
+
+            tok.nextToken();
+            tok.nextToken();
+            tok.nextToken();
+            assertEquals("b", tok.getTokenValue().toString());
+            assertEquals(8L, tok.getTokenOffset());
+            tok.nextToken();
+            assertEquals("caf\u00e9", tok.getTokenValue().toString());
+            assertEquals(10L, tok.getTokenOffset());
+            assertEquals(5, tok.getTokenLength());
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+// Compares the table driven and the switch engine of the tokenizer.
+// No warranty; no copyright -- use this as you will.
+
+package demo.parser;
+
+import java.io.*;
+
+import com.arthurdo.parser.*;
+
+public class TokenizerBenchmark
+{
+	public static void main(String[] args)
+	{
+		try
+		{
+			String page = args.length > 0 ? readFile(args[0]) : samplePage();
+			int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+			// warm up both engines before timing either
+			for (int i = 0; i < 3; i++)
+			{
+				run(page, false, rounds / 4 + 1, false);
+				run(page, true, rounds / 4 + 1, false);
+			}
+			for (int i = 0; i < 3; i++)
+			{
+				long switchTime = run(page, false, rounds, false);
+				long tableTime = run(page, true, rounds, false);
+				report("Reader", page, rounds, switchTime, tableTime);
+				switchTime = run(page, false, rounds, true);
+				tableTime = run(page, true, rounds, true);
+				report("char[]", page, rounds, switchTime, tableTime);
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return	nanoseconds taken to tokenize <i>page</i> <i>rounds</i> times
+	 */
+	static long run(String page, boolean tableDriven, int rounds, boolean inMemory)
+		throws IOException
+	{
+		char[] chars = page.toCharArray();
+		HtmlStreamTokenizer tok = new HtmlStreamTokenizer(chars);
+		tok.setTableDriven(tableDriven);
+		long tokens = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+		{
+			if (inMemory)
+				tok.reset(chars);
+			else
+				tok.reset(new StringReader(page));
+			while (tok.nextToken() != HtmlStreamTokenizer.TT_EOF)
+				tokens += tok.getTokenLength();
+		}
+		long time = System.nanoTime() - start;
+		if (tokens < 0)
+			System.out.println("never");		// keeps the loop from being optimized away
+		return time;
+	}
+
+	static void report(String input, String page, int rounds, long switchTime, long tableTime)
+	{
+		double mb = (double)page.length() * rounds / (1024 * 1024);
+		System.out.println(input + ": switch " + (int)(mb / (switchTime / 1e9)) + " MB/s, table "
+			+ (int)(mb / (tableTime / 1e9)) + " MB/s");
+	}
+
+	static String readFile(String name)
+		throws IOException
+	{
+		Reader in = new InputStreamReader(new FileInputStream(name), "UTF-8");
+		try
+		{
+			StringBuilder buf = new StringBuilder();
+			char[] chars = new char[8192];
+			int n;
+			while ((n = in.read(chars)) > 0)
+				buf.append(chars, 0, n);
+			return buf.toString();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * @return	a page of the usual mix of tags with attributes, text and
+	 *			comments
+	 */
+	static String samplePage()
+	{
+		StringBuilder page = new StringBuilder("<!DOCTYPE html>\n<html><head><title>Sample</title>\n");
+		for (int i = 0; i < 2000; i++)
+		{
+			page.append("<div class=\"row\" id='r").append(i).append("'>\n");
+			page.append("  <!-- row ").append(i).append(" -->\n");
+			page.append("  <a href=\"/item?id=").append(i).append("&amp;page=2\" title=\"Item ").append(i).append("\">");
+			page.append("Item number ").append(i).append("</a> costs &pound;").append(i % 97).append(".99\n");
+			page.append("  <img src=\"/img/").append(i).append(".png\" alt=\"\" width=32 height=32/>\n");
+			page.append("  <p>Some text to read, with a <b>bold</b> word and an <i>italic</i> one.</p>\n");
+			page.append("</div>\n");
+		}
+		return page.append("</body></html>\n").toString();
+	}
+}